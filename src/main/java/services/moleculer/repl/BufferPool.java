@@ -0,0 +1,109 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free pool of equally sized direct byte buffers, used by the network
+ * I/O of the remote console. Direct buffers are expensive to allocate, and
+ * the socket channels copy heap buffers into temporary direct buffers anyway.
+ */
+public class BufferPool {
+
+	// --- PROPERTIES ---
+
+	protected final int bufferSize;
+	protected final int maxPooled;
+
+	// --- POOLED BUFFERS ---
+
+	protected final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+	protected final AtomicInteger pooled = new AtomicInteger();
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a buffer pool.
+	 *
+	 * @param bufferSize
+	 *            capacity of the buffers (in bytes)
+	 * @param maxPooled
+	 *            maximum number of the idle (pooled) buffers
+	 */
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	// --- ACQUIRE / RELEASE ---
+
+	/**
+	 * Returns a cleared buffer from the pool, or allocates a new one.
+	 *
+	 * @return direct buffer
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Puts back a buffer into the pool. The caller must not use the buffer
+	 * after this call.
+	 *
+	 * @param buffer
+	 *            buffer (acquired from this pool)
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+			return;
+		}
+		if (pooled.incrementAndGet() > maxPooled) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.offer(buffer);
+	}
+
+	// --- GETTERS ---
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getPooled() {
+		return pooled.get();
+	}
+
+}
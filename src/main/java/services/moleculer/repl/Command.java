@@ -31,6 +31,8 @@ import java.util.LinkedList;
 
 import io.datatree.Tree;
 import services.moleculer.ServiceBroker;
+import services.moleculer.service.Service;
+import services.moleculer.service.ServiceRegistry;
 import services.moleculer.util.CheckedTree;
 
 /**
@@ -117,6 +119,80 @@ public abstract class Command {
 		return flags;
 	}
 
+	// --- PARSE DURATIONS ---
+
+	/**
+	 * Parses a duration, eg. "500us", "20ms", "2s", "1m" or "3" (seconds).
+	 *
+	 * @param value
+	 *            text value (or null)
+	 *
+	 * @return duration in milliseconds (or 0)
+	 */
+	protected long parseMillis(String value) {
+		return parseNanos(value) / 1000000L;
+	}
+
+	protected long parseNanos(String value) {
+		if (value == null) {
+			return 0;
+		}
+		value = value.trim().toLowerCase();
+		if (value.isEmpty()) {
+			return 0;
+		}
+		long multiplier = 1000000000L;
+		if (value.endsWith("us")) {
+			multiplier = 1000L;
+			value = value.substring(0, value.length() - 2);
+		} else if (value.endsWith("ms")) {
+			multiplier = 1000000L;
+			value = value.substring(0, value.length() - 2);
+		} else if (value.endsWith("s")) {
+			value = value.substring(0, value.length() - 1);
+		} else if (value.endsWith("m")) {
+			multiplier = 60000000000L;
+			value = value.substring(0, value.length() - 1);
+		}
+		return (long) (Double.parseDouble(value.trim()) * multiplier);
+	}
+
+	// --- PARSE SIZES ---
+
+	/**
+	 * Parses a size, eg. "512", "64k", "10mb" or "1g" (binary units).
+	 *
+	 * @param value
+	 *            text value
+	 *
+	 * @return size in bytes
+	 *
+	 * @throws NumberFormatException
+	 *             invalid size (eg. "1.5m")
+	 */
+	public static long parseSize(String value) {
+		value = value.trim().toLowerCase();
+		if (value.endsWith("b")) {
+			value = value.substring(0, value.length() - 1);
+		}
+		long multiplier = 1;
+		if (value.endsWith("k")) {
+			multiplier = 1024;
+		} else if (value.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		} else if (value.endsWith("g")) {
+			multiplier = 1024L * 1024 * 1024;
+		}
+		if (multiplier > 1) {
+			value = value.substring(0, value.length() - 1);
+		}
+		long size = Long.parseLong(value.trim());
+		if (size < 0) {
+			throw new NumberFormatException("Negative size: " + size);
+		}
+		return size * multiplier;
+	}
+
 	// --- CONCATENATE ARGUMENTS ---
 
 	protected Tree getPayload(String[] parameters) throws Exception {
@@ -207,6 +283,24 @@ public abstract class Command {
 		return payload;
 	}
 
+	// --- FIND LOCAL SERVICE ---
+
+	@SuppressWarnings("unchecked")
+	protected static final <T extends Service> T getService(ServiceBroker broker, Class<T> type) {
+		ServiceRegistry registry = broker.getConfig().getServiceRegistry();
+		Tree info = registry.getDescriptor();
+		for (Tree service : info.get("services")) {
+			String name = service.get("name", "");
+			if (name != null && !name.isEmpty()) {
+				Service instance = broker.getLocalService(name);
+				if (instance != null && type.isAssignableFrom(instance.getClass())) {
+					return (T) instance;
+				}
+			}
+		}
+		return null;
+	}
+
 	// --- FORMATTERS ---
 
 	protected void printChars(StringBuilder out, char c, int repeats) {
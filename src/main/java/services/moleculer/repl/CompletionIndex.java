@@ -0,0 +1,459 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static services.moleculer.util.CommonUtils.getNodeInfos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.datatree.Tree;
+import services.moleculer.ServiceBroker;
+
+/**
+ * Word index of the tab completion. It contains the sorted names of the
+ * commands, the actions, the events and the nodes, and the options of the
+ * commands (from "Command.options"). The kind of the arguments is taken from
+ * the usage of the commands (eg. "call &lt;actionName&gt;" is completed with
+ * action names). Lookups are binary searches in an immutable snapshot, so a
+ * keystroke never touches the service registry. The snapshot is rebuilt in
+ * the background, when it is older than the refresh interval.
+ */
+public class CompletionIndex {
+
+	// --- ARGUMENT TYPES ---
+
+	protected static final int TYPE_ANY = 0;
+	protected static final int TYPE_COMMAND = 1;
+	protected static final int TYPE_ACTION = 2;
+	protected static final int TYPE_EVENT = 3;
+	protected static final int TYPE_NODE = 4;
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Maximum number of returned candidates.
+	 */
+	protected static final int MAX_CANDIDATES = 100;
+
+	protected static final Pattern PLACEHOLDER = Pattern.compile("[<\\[]([^<>\\[\\]]+)[>\\]]");
+
+	protected static final String[] NO_WORDS = {};
+
+	// --- PROPERTIES ---
+
+	protected final LocalRepl repl;
+	protected final ServiceBroker broker;
+	protected final Executor executor;
+	protected final long refreshInterval;
+
+	// --- CURRENT SNAPSHOT ---
+
+	protected volatile Snapshot snapshot = new Snapshot(0, NO_WORDS, new HashMap<>(), NO_WORDS, NO_WORDS,
+			NO_WORDS);
+
+	protected final AtomicBoolean refreshing = new AtomicBoolean();
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates an index.
+	 *
+	 * @param repl
+	 *            console (source of the commands)
+	 * @param broker
+	 *            parent ServiceBroker (source of the actions and events)
+	 * @param executor
+	 *            executor of the background refresh
+	 * @param refreshInterval
+	 *            maximum age of the index, in milliseconds
+	 */
+	public CompletionIndex(LocalRepl repl, ServiceBroker broker, Executor executor, long refreshInterval) {
+		this.repl = repl;
+		this.broker = broker;
+		this.executor = executor;
+		this.refreshInterval = refreshInterval;
+	}
+
+	// --- COMPLETE ---
+
+	/**
+	 * Finds the candidates of the last word of a command line.
+	 *
+	 * @param line
+	 *            command line (up to the cursor)
+	 *
+	 * @return candidates (or null, if the word cannot be completed)
+	 */
+	public Completion complete(String line) {
+		Snapshot current = snapshot;
+		if (System.currentTimeMillis() - current.timestamp > refreshInterval) {
+			refresh();
+		}
+		int start = line.lastIndexOf(' ') + 1;
+		String word = line.substring(start);
+		String head = line.substring(0, start).trim();
+		String[] words = head.isEmpty() ? NO_WORDS : head.split("\\s+");
+		String[] dictionary = current.lookup(words, word);
+		if (dictionary == null) {
+			return null;
+		}
+
+		// Range of the matching words
+		int from = lowerBound(dictionary, word);
+		if (word.isEmpty()) {
+
+			// Internal ($...) names are listed only on request
+			from = lowerBound(dictionary, "%");
+		}
+		int to = lowerBound(dictionary, word + Character.MAX_VALUE);
+		if (from >= to) {
+			return new Completion(start, NO_WORDS, 0, word);
+		}
+		String[] candidates = Arrays.copyOfRange(dictionary, from, Math.min(to, from + MAX_CANDIDATES));
+		return new Completion(start, candidates, to - from, commonPrefix(dictionary[from], dictionary[to - 1]));
+	}
+
+	protected static int lowerBound(String[] words, String key) {
+		int i = Arrays.binarySearch(words, key);
+		return i < 0 ? -i - 1 : i;
+	}
+
+	protected static String commonPrefix(String first, String last) {
+		int len = Math.min(first.length(), last.length());
+		int i = 0;
+		while (i < len && first.charAt(i) == last.charAt(i)) {
+			i++;
+		}
+		return first.substring(0, i);
+	}
+
+	// --- REFRESH ---
+
+	/**
+	 * Rebuilds the index in the background (if it is not already in
+	 * progress).
+	 */
+	public void refresh() {
+		if (!refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					snapshot = build(snapshot);
+				} catch (Throwable ignored) {
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (Exception stopped) {
+			refreshing.set(false);
+		}
+	}
+
+	protected Snapshot build(Snapshot previous) {
+
+		// Commands and options
+		TreeSet<String> commandNames = new TreeSet<>();
+		HashMap<String, Syntax> syntaxes = new HashMap<>();
+		for (Map.Entry<String, Command> entry : repl.commands.entrySet()) {
+			commandNames.add(entry.getKey());
+			syntaxes.put(entry.getKey(), parseSyntax(entry.getValue()));
+		}
+		commandNames.add("help");
+		Syntax help = new Syntax();
+		help.arguments = new Argument[] { new Argument(TYPE_COMMAND, false) };
+		syntaxes.put("help", help);
+
+		// Actions, events and nodes (from the registry)
+		String[] actions = previous.actions;
+		String[] events = previous.events;
+		String[] nodes = previous.nodes;
+		try {
+			Tree infos = getNodeInfos(broker, broker.getConfig().getTransporter());
+			TreeSet<String> actionNames = new TreeSet<>();
+			TreeSet<String> eventNames = new TreeSet<>();
+			TreeSet<String> nodeIDs = new TreeSet<>();
+			for (Tree info : infos) {
+				nodeIDs.add(info.getName());
+				Tree services = info.get("services");
+				if (services == null || services.isNull()) {
+					continue;
+				}
+				for (Tree service : services) {
+					addNames(service.get("actions"), actionNames);
+					addNames(service.get("events"), eventNames);
+				}
+			}
+			actions = actionNames.toArray(NO_WORDS);
+			events = eventNames.toArray(NO_WORDS);
+			nodes = nodeIDs.toArray(NO_WORDS);
+		} catch (Exception unavailable) {
+
+			// Keep the previous names
+		}
+		return new Snapshot(System.currentTimeMillis(), commandNames.toArray(NO_WORDS), syntaxes, actions, events,
+				nodes);
+	}
+
+	protected static void addNames(Tree list, TreeSet<String> names) {
+		if (list == null || list.isNull()) {
+			return;
+		}
+		for (Tree item : list) {
+			String name = item.get("name", (String) null);
+			if (name != null && !name.isEmpty() && name.indexOf(' ') == -1) {
+				names.add(name);
+			}
+		}
+	}
+
+	// --- PARSE COMMAND SYNTAX ---
+
+	/**
+	 * Collects the options of a command, and the types of the arguments (from
+	 * the usage, eg. "dcall &lt;nodeID&gt; &lt;actionName&gt; [jsonParams]").
+	 */
+	protected Syntax parseSyntax(Command command) {
+		Syntax syntax = new Syntax();
+
+		// Options (eg. "nodeID <nodeID>" or "local, -l")
+		TreeSet<String> options = new TreeSet<>();
+		for (String[] option : command.options) {
+			String[] names = option[0].split(",");
+			String first = names[0].trim();
+			int space = first.indexOf(' ');
+			Argument value = null;
+			if (space > -1) {
+				String placeholder = first.substring(space + 1).trim();
+				first = first.substring(0, space);
+				value = new Argument(typeOf(placeholder), placeholder.startsWith("["));
+			}
+			names[0] = "--" + first;
+			for (String name : names) {
+				name = name.trim();
+				options.add(name);
+				if (value != null) {
+					syntax.values.put(name, value);
+				}
+			}
+		}
+		syntax.options = options.toArray(NO_WORDS);
+
+		// Positional arguments
+		String usage = String.valueOf(command.getUsage());
+		int space = usage.indexOf(' ');
+		Matcher matcher = PLACEHOLDER.matcher(space > -1 ? usage.substring(space) : "");
+		ArrayList<Argument> arguments = new ArrayList<>();
+		while (matcher.find()) {
+			String placeholder = matcher.group(1).trim();
+			if (!placeholder.startsWith("-") && !placeholder.equals("options")) {
+				arguments.add(new Argument(typeOf(placeholder), false));
+			}
+		}
+		syntax.arguments = arguments.toArray(new Argument[arguments.size()]);
+		return syntax;
+	}
+
+	protected static int typeOf(String placeholder) {
+		String text = placeholder.toLowerCase();
+		if (text.contains("command")) {
+			return TYPE_COMMAND;
+		}
+		if (text.contains("action")) {
+			return TYPE_ACTION;
+		}
+		if (text.contains("event")) {
+			return TYPE_EVENT;
+		}
+		if (text.contains("nodeid")) {
+			return TYPE_NODE;
+		}
+		return TYPE_ANY;
+	}
+
+	// --- SNAPSHOT OF THE INDEX ---
+
+	protected static class Snapshot {
+
+		protected final long timestamp;
+		protected final String[] commands;
+		protected final HashMap<String, Syntax> syntaxes;
+		protected final String[] actions;
+		protected final String[] events;
+		protected final String[] nodes;
+
+		protected Snapshot(long timestamp, String[] commands, HashMap<String, Syntax> syntaxes, String[] actions,
+				String[] events, String[] nodes) {
+			this.timestamp = timestamp;
+			this.commands = commands;
+			this.syntaxes = syntaxes;
+			this.actions = actions;
+			this.events = events;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * Selects the sorted word list of the next word.
+		 *
+		 * @param words
+		 *            previous words of the command line
+		 * @param word
+		 *            beginning of the current word
+		 *
+		 * @return sorted words (or null)
+		 */
+		protected String[] lookup(String[] words, String word) {
+			if (words.length == 0) {
+				return commands;
+			}
+			if (word.startsWith("{") || word.startsWith("'") || word.startsWith("\"")) {
+				return null;
+			}
+			Syntax syntax = syntaxes.get(words[0]);
+			if (syntax == null) {
+				return null;
+			}
+			if (word.startsWith("-")) {
+				return syntax.options;
+			}
+			int position = 0;
+			Argument value = null;
+			for (int i = 1; i < words.length; i++) {
+				String previous = words[i];
+				if (value != null) {
+
+					// Value of the previous option
+					Argument expected = value;
+					value = null;
+					if (!expected.optional || !previous.startsWith("-")) {
+						continue;
+					}
+				}
+				if (previous.startsWith("-")) {
+					value = syntax.values.get(previous);
+					continue;
+				}
+				if (position < syntax.arguments.length && syntax.arguments[position].type == TYPE_COMMAND) {
+
+					// Nested command line (eg. "profile call ...")
+					return lookup(Arrays.copyOfRange(words, i, words.length), word);
+				}
+				position++;
+			}
+			if (value != null) {
+				return wordsOf(value.type);
+			}
+			return position < syntax.arguments.length ? wordsOf(syntax.arguments[position].type) : null;
+		}
+
+		protected String[] wordsOf(int type) {
+			switch (type) {
+			case TYPE_COMMAND:
+				return commands;
+			case TYPE_ACTION:
+				return actions;
+			case TYPE_EVENT:
+				return events;
+			case TYPE_NODE:
+				return nodes;
+			default:
+				return null;
+			}
+		}
+
+	}
+
+	protected static class Syntax {
+
+		/**
+		 * Sorted option names (eg. "--local" and "-l").
+		 */
+		protected String[] options = NO_WORDS;
+
+		/**
+		 * Options with value (eg. "--nodeID").
+		 */
+		protected final HashMap<String, Argument> values = new HashMap<>();
+
+		protected Argument[] arguments = new Argument[0];
+
+	}
+
+	protected static class Argument {
+
+		protected final int type;
+		protected final boolean optional;
+
+		protected Argument(int type, boolean optional) {
+			this.type = type;
+			this.optional = optional;
+		}
+
+	}
+
+	// --- RESULT ---
+
+	public static class Completion {
+
+		/**
+		 * Position of the completed word in the command line.
+		 */
+		public final int start;
+
+		/**
+		 * Sorted candidates (max. MAX_CANDIDATES).
+		 */
+		public final String[] candidates;
+
+		/**
+		 * Number of all matching words.
+		 */
+		public final int total;
+
+		/**
+		 * Common prefix of all matching words.
+		 */
+		public final String prefix;
+
+		protected Completion(int start, String[] candidates, int total, String prefix) {
+			this.start = start;
+			this.candidates = candidates;
+			this.total = total;
+			this.prefix = prefix;
+		}
+
+	}
+
+}
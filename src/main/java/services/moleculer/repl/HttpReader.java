@@ -0,0 +1,727 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP and WebSocket front end of the remote console (on the "httpPort"). It
+ * uses the Reactors, the command executor, the TLS layer and the output
+ * backpressure of the telnet sessions. Samples:<br>
+ * <br>
+ * curl -u admin:admin -H "X-Repl-Request: 1" --data "nodes" http://localhost:8023/exec<br>
+ * curl -u admin:admin -H "X-Repl-Request: 1" --data "info"
+ * "http://localhost:8023/exec?format=json"<br>
+ * <br>
+ * The output is streamed in chunks while the command is running (as plain text
+ * or as JSON lines). Connections are persistent (HTTP/1.1 keep-alive), and the
+ * requests of a connection are executed in order. Interactive clients can
+ * upgrade "/ws" to WebSocket: each text message is a command line, and the
+ * output is sent back in text messages. If the console requires login, the
+ * requests need Basic authorization (a WebSocket client may send
+ * "username:password" as its first message instead). ANSI colors are removed
+ * unless the URL contains "color=true".<br>
+ * <br>
+ * The body of an "/exec" request is the command line, and the request must
+ * have an "X-Repl-Request" header (browsers do not send custom headers to
+ * other sites without a CORS preflight, which is never allowed). Requests with
+ * an "Origin" header (sent by browsers) are rejected, unless the origin is in
+ * the "allowedOrigins" of the RemoteRepl.
+ */
+public class HttpReader extends RemoteReader {
+
+	// --- CONSTANTS ---
+
+	protected static final int MAX_REQUEST_SIZE = 64 * 1024;
+
+	protected static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+
+	protected static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	protected static final String REQUEST_HEADER = "x-repl-request";
+
+	protected static final String CHALLENGE = "WWW-Authenticate: Basic realm=\"Moleculer REPL\"\r\n";
+
+	// --- WEBSOCKET OPCODES ---
+
+	protected static final int OPCODE_CONTINUATION = 0;
+	protected static final int OPCODE_TEXT = 1;
+	protected static final int OPCODE_BINARY = 2;
+	protected static final int OPCODE_CLOSE = 8;
+	protected static final int OPCODE_PING = 9;
+	protected static final int OPCODE_PONG = 10;
+
+	// --- OUTPUT FORMATS ---
+
+	protected static final int FORMAT_TEXT = 0;
+	protected static final int FORMAT_JSON = 1;
+	protected static final int FORMAT_WEBSOCKET = 2;
+
+	// --- VARIABLES ---
+
+	protected final boolean authenticated;
+
+	/**
+	 * Received, unprocessed bytes (used by the selector thread).
+	 */
+	protected byte[] input = new byte[1024];
+
+	protected int inputLength;
+
+	/**
+	 * Fatal protocol error, the rest of the input is ignored.
+	 */
+	protected boolean rejected;
+
+	// --- WEBSOCKET MODE ---
+
+	protected boolean webSocket;
+	protected boolean webSocketColor;
+
+	protected final ByteArrayOutputStream message = new ByteArrayOutputStream();
+
+	// --- CONSTRUCTOR ---
+
+	public HttpReader(RemoteRepl remoteRepl, Reactor reactor, SocketChannel channel, TlsChannel tls,
+			SelectionKey key, boolean authenticated, String username, String password) {
+		super(remoteRepl, reactor, channel, tls, key, authenticated, false, username, password);
+		this.authenticated = authenticated;
+	}
+
+	@Override
+	protected void start() {
+
+		// No banner
+	}
+
+	// --- PARSE INPUT ---
+
+	@Override
+	protected void onBytes(ByteBuffer in) throws Exception {
+		if (rejected) {
+			return;
+		}
+		int len = in.remaining();
+		if (inputLength + len > input.length) {
+			input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + len));
+		}
+		in.get(input, inputLength, len);
+		inputLength += len;
+		while (!rejected && (webSocket ? parseFrame() : parseRequest())) {
+
+			// Next request or frame
+		}
+	}
+
+	protected void consume(int len) {
+		System.arraycopy(input, len, input, 0, inputLength - len);
+		inputLength -= len;
+	}
+
+	// --- HTTP REQUEST ---
+
+	protected boolean parseRequest() throws Exception {
+		int headerEnd = indexOf(input, inputLength, HEADER_END);
+		if (headerEnd < 0) {
+			if (inputLength > MAX_REQUEST_SIZE) {
+				reject(431, "Request Header Fields Too Large");
+			}
+			return false;
+		}
+		String[] lines = new String(input, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+		String[] requestLine = lines[0].split(" ");
+		if (requestLine.length != 3) {
+			reject(400, "Bad Request");
+			return false;
+		}
+		HashMap<String, String> headers = new HashMap<>();
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+			}
+		}
+		if (headers.containsKey("transfer-encoding")) {
+			reject(411, "Length Required");
+			return false;
+		}
+		int contentLength;
+		try {
+			contentLength = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+		} catch (NumberFormatException invalid) {
+			contentLength = -1;
+		}
+		if (contentLength < 0 || contentLength > MAX_REQUEST_SIZE) {
+			reject(413, "Payload Too Large");
+			return false;
+		}
+		int total = headerEnd + HEADER_END.length + contentLength;
+		if (inputLength < total) {
+			return false;
+		}
+		String body = new String(input, headerEnd + HEADER_END.length, contentLength, StandardCharsets.UTF_8);
+		consume(total);
+		onRequest(requestLine[0], requestLine[1], requestLine[2], headers, body);
+		return true;
+	}
+
+	protected void onRequest(String method, String target, String version, HashMap<String, String> headers,
+			String body) throws Exception {
+		String path = target;
+		String query = "";
+		int q = target.indexOf('?');
+		if (q > -1) {
+			path = target.substring(0, q);
+			query = target.substring(q + 1);
+		}
+		String connection = headers.getOrDefault("connection", "");
+		boolean keepAlive = "HTTP/1.1".equals(version) ? !"close".equalsIgnoreCase(connection)
+				: "keep-alive".equalsIgnoreCase(connection);
+		lastActivity = System.currentTimeMillis();
+
+		// Cross-site requests from browsers
+		String origin = headers.get("origin");
+		if (origin != null && !isAllowedOrigin(origin)) {
+			reject(403, "Forbidden");
+			return;
+		}
+
+		// WebSocket upgrade
+		if ("/ws".equals(path)) {
+			if (!"GET".equals(method) || !"websocket".equalsIgnoreCase(headers.get("upgrade"))
+					|| headers.get("sec-websocket-key") == null) {
+				respond(400, "Bad Request", "", false);
+				rejected = true;
+				return;
+			}
+			upgrade(headers, query);
+			return;
+		}
+
+		// Command execution
+		if (!"/exec".equals(path)) {
+			respond(404, "Not Found", "", keepAlive);
+			return;
+		}
+		if (!"POST".equals(method)) {
+			respond(405, "Method Not Allowed", "Allow: POST\r\n", keepAlive);
+			return;
+		}
+		if (!headers.containsKey(REQUEST_HEADER)) {
+			respond(403, "Forbidden", "", keepAlive);
+			return;
+		}
+		String authorization = headers.get("authorization");
+		String user = authorize(authorization);
+		if (user == null) {
+			if (authorization == null) {
+				respond(401, "Unauthorized", CHALLENGE, keepAlive);
+				return;
+			}
+
+			// Failed login: delay the response without blocking the selector
+			rejected = true;
+			try {
+				remoteRepl.scheduler.schedule(() -> {
+					respond(401, "Unauthorized", CHALLENGE, false);
+				}, 1, TimeUnit.SECONDS);
+			} catch (Exception stopped) {
+				respond(401, "Unauthorized", CHALLENGE, false);
+			}
+			return;
+		}
+		String command = body.trim();
+		if (command.isEmpty()) {
+			respond(400, "Bad Request", "", keepAlive);
+			return;
+		}
+		if (command.equals("help") || command.startsWith("nodes") || command.startsWith("actions")) {
+			command += " telnet";
+		}
+		boolean json = hasParam(query, "format=json") || headers.getOrDefault("accept", "").contains("json");
+		boolean color = hasParam(query, "color=true");
+		String commandLine = command;
+		submit(() -> {
+			execute(user, commandLine, json, color, keepAlive);
+		});
+	}
+
+	protected void execute(String user, String command, boolean json, boolean color, boolean keepAlive) {
+		commandCount.incrementAndGet();
+		long cpuStart = currentThreadCpuTime();
+		long start = System.nanoTime();
+		beginCommand();
+		boolean chunked = false;
+		try {
+			addString("HTTP/1.1 200 OK\r\nContent-Type: "
+					+ (json ? "application/x-ndjson" : "text/plain; charset=US-ASCII")
+					+ "\r\nTransfer-Encoding: chunked\r\nCache-Control: no-cache\r\n"
+					+ (keepAlive ? "" : "Connection: close\r\n") + "\r\n", false);
+			chunked = true;
+			FramedOutputStream out = new FramedOutputStream(this, remoteRepl.bufferSize,
+					json ? FORMAT_JSON : FORMAT_TEXT, color);
+			PrintStream printStream = new PrintStream(out, true, "US-ASCII");
+			PrintWriter printWriter = new PrintWriter(new ColorWriter(printStream), true);
+			remoteRepl.onCommand(printWriter, command, user + "@" + address);
+			printStream.flush();
+			if (json) {
+				long duration = (System.nanoTime() - start) / 1000000L;
+				addBytes(chunk(("{\"done\":true,\"duration\":" + duration + "}\n").getBytes()), false);
+			}
+		} catch (Exception cause) {
+
+			// Closed connection or interrupted command
+			keepAlive = false;
+		} finally {
+			endCommand();
+
+			// Last chunk (the body is complete even if the command failed)
+			if (chunked && !closed.get()) {
+				addBytes(chunk(new byte[0]), false);
+			}
+			long cpuEnd = currentThreadCpuTime();
+			if (cpuStart > -1 && cpuEnd > -1) {
+				cpuTime.addAndGet(cpuEnd - cpuStart);
+			}
+			if (!keepAlive) {
+				closeWhenSent();
+			}
+		}
+	}
+
+	protected void respond(int status, String reason, String headers, boolean keepAlive) {
+		String body = status + " " + reason + "\r\n";
+		String response = "HTTP/1.1 " + status + ' ' + reason + "\r\nContent-Type: text/plain\r\nContent-Length: "
+				+ body.length() + "\r\n" + headers + (keepAlive ? "" : "Connection: close\r\n") + "\r\n" + body;
+		submit(() -> {
+			addString(response, false);
+			if (!keepAlive) {
+				closeWhenSent();
+			}
+		});
+	}
+
+	protected void reject(int status, String reason) {
+		rejected = true;
+		respond(status, reason, "", false);
+	}
+
+	/**
+	 * Checks the Basic authorization header.
+	 *
+	 * @return name of the user, or null if unauthorized
+	 */
+	protected String authorize(String authorization) {
+		if (!authenticated) {
+			return "anonymous";
+		}
+		if (authorization == null || !authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+			return null;
+		}
+		try {
+			String credentials = new String(Base64.getDecoder().decode(authorization.substring(6).trim()),
+					StandardCharsets.UTF_8);
+			return checkCredentials(credentials);
+		} catch (IllegalArgumentException invalid) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks the "Origin" header of a browser request.
+	 *
+	 * @return true if the origin is in the "allowedOrigins"
+	 */
+	protected boolean isAllowedOrigin(String origin) {
+		String[] allowedOrigins = remoteRepl.allowedOrigins;
+		if (allowedOrigins != null) {
+			for (String allowedOrigin : allowedOrigins) {
+				if (origin.equalsIgnoreCase(allowedOrigin)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	protected String checkCredentials(String credentials) {
+		int colon = credentials.indexOf(':');
+		if (colon < 0) {
+			return null;
+		}
+		String user = credentials.substring(0, colon);
+		String secret = credentials.substring(colon + 1);
+		boolean valid = MessageDigest.isEqual(user.getBytes(StandardCharsets.UTF_8),
+				String.valueOf(username).getBytes(StandardCharsets.UTF_8))
+				& MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+						String.valueOf(password).getBytes(StandardCharsets.UTF_8));
+		return valid ? user : null;
+	}
+
+	// --- WEBSOCKET ---
+
+	protected void upgrade(HashMap<String, String> headers, String query) throws Exception {
+		MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+		byte[] digest = sha1
+				.digest((headers.get("sec-websocket-key") + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+		String response = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+				+ "Sec-WebSocket-Accept: " + Base64.getEncoder().encodeToString(digest) + "\r\n\r\n";
+		String user = authorize(headers.get("authorization"));
+		webSocket = true;
+		webSocketColor = hasParam(query, "color=true");
+		loggedOn = user != null;
+		enteredName = user;
+		submit(() -> {
+			addString(response, false);
+			if (user == null) {
+				addText("Username and password (username:password):", false);
+			} else {
+				addText("Welcome " + user + "!\r\nType \"help\" for more information.\r\nmol $ ", false);
+			}
+		});
+	}
+
+	protected boolean parseFrame() throws Exception {
+		if (inputLength < 2) {
+			return false;
+		}
+		int first = input[0] & 0xff;
+		int second = input[1] & 0xff;
+		boolean fin = (first & 0x80) != 0;
+		int opcode = first & 0x0f;
+		long len = second & 0x7f;
+		int pos = 2;
+		if (len == 126) {
+			if (inputLength < 4) {
+				return false;
+			}
+			len = ((input[2] & 0xff) << 8) | (input[3] & 0xff);
+			pos = 4;
+		} else if (len == 127) {
+			if (inputLength < 10) {
+				return false;
+			}
+			len = 0;
+			for (int i = 2; i < 10; i++) {
+				len = (len << 8) | (input[i] & 0xff);
+			}
+			pos = 10;
+		}
+
+		// Client frames must be masked
+		if ((second & 0x80) == 0 || len > MAX_REQUEST_SIZE || len < 0) {
+			closeWebSocket(len > MAX_REQUEST_SIZE ? 1009 : 1002);
+			return false;
+		}
+		if (inputLength < pos + 4 + len) {
+			return false;
+		}
+		byte[] payload = new byte[(int) len];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (input[pos + 4 + i] ^ input[pos + (i & 3)]);
+		}
+		consume(pos + 4 + payload.length);
+		lastActivity = System.currentTimeMillis();
+
+		switch (opcode) {
+		case OPCODE_PING:
+			addBytes(frame(OPCODE_PONG, payload, payload.length), true);
+			break;
+		case OPCODE_PONG:
+			break;
+		case OPCODE_CLOSE:
+			closeWebSocket(1000);
+			return false;
+		case OPCODE_TEXT:
+		case OPCODE_BINARY:
+
+			// First fragment of a new message
+			message.reset();
+			return appendFragment(payload, fin);
+		case OPCODE_CONTINUATION:
+			return appendFragment(payload, fin);
+		default:
+			closeWebSocket(1002);
+			return false;
+		}
+		return true;
+	}
+
+	protected boolean appendFragment(byte[] payload, boolean fin) throws Exception {
+		if (message.size() + payload.length > MAX_REQUEST_SIZE) {
+			closeWebSocket(1009);
+			return false;
+		}
+		message.write(payload);
+		if (fin) {
+			String text = new String(message.toByteArray(), StandardCharsets.UTF_8).trim();
+			message.reset();
+			onMessage(text);
+		}
+		return true;
+	}
+
+	protected void onMessage(String text) throws Exception {
+		if (text.isEmpty()) {
+			return;
+		}
+
+		// Check password
+		if (!loggedOn) {
+			String user = checkCredentials(text);
+			if (user == null) {
+				addText("Invalid username or password!\r\n", true);
+
+				// Delay the close without blocking the selector thread
+				rejected = true;
+				try {
+					remoteRepl.scheduler.schedule(() -> {
+						closeWebSocket(1008);
+					}, 1, TimeUnit.SECONDS);
+				} catch (Exception stopped) {
+					closeWebSocket(1008);
+				}
+				return;
+			}
+			loggedOn = true;
+			enteredName = user;
+			addText("Welcome " + user + "!\r\nType \"help\" for more information.\r\nmol $ ", true);
+			return;
+		}
+		if (text.equalsIgnoreCase("close")) {
+			closeWebSocket(1000);
+			return;
+		}
+		if ("r".equalsIgnoreCase(text) || "repeat".equalsIgnoreCase(text)) {
+			text = lastCommand;
+		}
+		if (text.equals("help") || text.startsWith("nodes") || text.startsWith("actions")) {
+			text += " telnet";
+		}
+		lastCommand = text;
+		String commandLine = text;
+		submit(() -> {
+			executeCommand(commandLine);
+		});
+	}
+
+	protected void closeWebSocket(int status) {
+		rejected = true;
+		byte[] payload = { (byte) (status >> 8), (byte) status };
+		submit(() -> {
+			addBytes(frame(OPCODE_CLOSE, payload, payload.length), false);
+			closeWhenSent();
+		});
+	}
+
+	@Override
+	protected SessionOutputStream createOutputStream() {
+		return new FramedOutputStream(this, remoteRepl.bufferSize, FORMAT_WEBSOCKET, webSocketColor);
+	}
+
+	@Override
+	protected void addText(String text, boolean directSet) {
+		if (!webSocket) {
+			super.addText(text, directSet);
+			return;
+		}
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		addBytes(frame(OPCODE_TEXT, bytes, bytes.length), directSet);
+	}
+
+	// --- ORDERED EXECUTION ---
+
+	/**
+	 * Executes a task after the previous requests of this connection.
+	 */
+	protected void submit(Runnable task) {
+		pendingCommands.incrementAndGet();
+		try {
+			commands.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					pendingCommands.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException stopped) {
+			pendingCommands.decrementAndGet();
+		}
+	}
+
+	// --- FRAMING ---
+
+	protected static byte[] chunk(byte[] data) {
+		byte[] header = (Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] bytes = new byte[header.length + data.length + 2];
+		System.arraycopy(header, 0, bytes, 0, header.length);
+		System.arraycopy(data, 0, bytes, header.length, data.length);
+		bytes[bytes.length - 2] = '\r';
+		bytes[bytes.length - 1] = '\n';
+		return bytes;
+	}
+
+	protected static byte[] frame(int opcode, byte[] data, int len) {
+		int headerSize = len < 126 ? 2 : len < 65536 ? 4 : 10;
+		byte[] bytes = new byte[headerSize + len];
+		bytes[0] = (byte) (0x80 | opcode);
+		if (len < 126) {
+			bytes[1] = (byte) len;
+		} else if (len < 65536) {
+			bytes[1] = 126;
+			bytes[2] = (byte) (len >> 8);
+			bytes[3] = (byte) len;
+		} else {
+			bytes[1] = 127;
+			for (int i = 0; i < 8; i++) {
+				bytes[9 - i] = (byte) (i < 4 ? len >>> (8 * i) : 0);
+			}
+		}
+		System.arraycopy(data, 0, bytes, headerSize, len);
+		return bytes;
+	}
+
+	protected static String toJson(byte[] data, int len) {
+		StringBuilder json = new StringBuilder(len + 16);
+		json.append("{\"output\":\"");
+		for (int i = 0; i < len; i++) {
+			char c = (char) (data[i] & 0xff);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c == '\n') {
+				json.append("\\n");
+			} else if (c == '\r') {
+				json.append("\\r");
+			} else if (c == '\t') {
+				json.append("\\t");
+			} else if (c < 32 || c > 126) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append("\"}\n");
+		return json.toString();
+	}
+
+	// --- UTILITIES ---
+
+	protected static int indexOf(byte[] data, int len, byte[] pattern) {
+		for (int i = 0; i <= len - pattern.length; i++) {
+			int j = 0;
+			while (j < pattern.length && data[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected static boolean hasParam(String query, String param) {
+		for (String token : query.split("&")) {
+			if (token.equalsIgnoreCase(param)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// --- FRAMED OUTPUT ---
+
+	/**
+	 * Sends the output of a command in HTTP chunks or WebSocket messages, and
+	 * removes the ANSI escape sequences (if colors are not required).
+	 */
+	protected static class FramedOutputStream extends SessionOutputStream {
+
+		protected final int format;
+		protected final boolean color;
+
+		/**
+		 * Inside of an ANSI escape sequence (between chunks).
+		 */
+		protected int escape;
+
+		protected FramedOutputStream(RemoteReader reader, int bufferSize, int format, boolean color) {
+			super(reader, bufferSize);
+			this.format = format;
+			this.color = color;
+		}
+
+		@Override
+		protected byte[] encode(byte[] bytes, int len) {
+			if (!color) {
+				len = stripEscapes(bytes, len);
+				if (len == 0) {
+					return null;
+				}
+			}
+			switch (format) {
+			case FORMAT_JSON:
+				return chunk(toJson(bytes, len).getBytes(StandardCharsets.US_ASCII));
+			case FORMAT_WEBSOCKET:
+				return frame(OPCODE_TEXT, bytes, len);
+			default:
+				return chunk(Arrays.copyOf(bytes, len));
+			}
+		}
+
+		protected int stripEscapes(byte[] bytes, int len) {
+			int n = 0;
+			for (int i = 0; i < len; i++) {
+				byte b = bytes[i];
+				if (escape == 1) {
+					escape = b == '[' ? 2 : 0;
+				} else if (escape == 2) {
+					if (b >= 0x40 && b <= 0x7e) {
+						escape = 0;
+					}
+				} else if (b == 27) {
+					escape = 1;
+				} else {
+					bytes[n++] = b;
+				}
+			}
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,525 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.nio.charset.StandardCharsets;
+
+import services.moleculer.repl.CompletionIndex.Completion;
+
+/**
+ * Server-side line discipline of a telnet session. It parses the ANSI escape
+ * sequences of the cursor keys, and supports the usual (Emacs-style) editing
+ * keys:<br>
+ * <br>
+ * Left / Right (Ctrl+B / Ctrl+F), Home / End (Ctrl+A / Ctrl+E): move the
+ * cursor<br>
+ * Up / Down (Ctrl+P / Ctrl+N): browse the history of the session<br>
+ * Backspace, Delete (Ctrl+D): delete a character<br>
+ * Ctrl+K / Ctrl+U / Ctrl+W: delete to the end / to the beginning / the
+ * previous word<br>
+ * Ctrl+C: cancel the line, Ctrl+L: clear the screen<br>
+ * Tab: complete the command, option, action, event or node name<br>
+ * <br>
+ * It is not thread-safe, it is used by the selector thread of the session.
+ */
+public class LineEditor {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Maximum length of a command line.
+	 */
+	protected static final int MAX_LENGTH = 64 * 1024;
+
+	protected static final String PROMPT = "mol $ ";
+
+	protected static final String HIGHLIGHT = "\u001B[1m";
+	protected static final String NORMAL = "\u001B[0m";
+	protected static final String ERASE_TO_END = "\u001B[K";
+	protected static final String CLEAR_SCREEN = "\u001B[2J\u001B[H";
+
+	/**
+	 * Width of the terminal (for listing the candidates).
+	 */
+	protected static final int SCREEN_WIDTH = 80;
+
+	// --- STATES OF THE ESCAPE PARSER ---
+
+	protected static final int ESCAPE_NONE = 0;
+	protected static final int ESCAPE_START = 1;
+	protected static final int ESCAPE_CSI = 2;
+	protected static final int ESCAPE_SS3 = 3;
+
+	// --- VARIABLES ---
+
+	protected final RemoteReader reader;
+
+	protected final StringBuilder line = new StringBuilder(128);
+
+	protected int cursor;
+
+	protected int escapeState = ESCAPE_NONE;
+
+	protected int escapeParameter;
+
+	/**
+	 * Output of the editing (sent with the echo of the packet).
+	 */
+	protected final StringBuilder output = new StringBuilder(64);
+
+	// --- HISTORY (RING BUFFER) ---
+
+	protected final String[] history;
+
+	protected int historyStart;
+
+	protected int historyCount;
+
+	/**
+	 * Position in the history (0 = the edited line).
+	 */
+	protected int historyOffset;
+
+	/**
+	 * The edited line (while browsing the history).
+	 */
+	protected String savedLine = "";
+
+	// --- CONSTRUCTOR ---
+
+	public LineEditor(RemoteReader reader, int historySize) {
+		this.reader = reader;
+		this.history = new String[Math.max(0, historySize)];
+	}
+
+	// --- PROCESS INPUT ---
+
+	/**
+	 * Processes a character of the input.
+	 *
+	 * @param c
+	 *            received character
+	 *
+	 * @return entered command line (or null)
+	 */
+	public String onChar(char c) {
+		try {
+			return processChar(c);
+		} finally {
+			flush();
+		}
+	}
+
+	protected String processChar(char c) {
+		switch (escapeState) {
+		case ESCAPE_START:
+			escapeState = ESCAPE_NONE;
+			if (c == '[') {
+				escapeState = ESCAPE_CSI;
+				escapeParameter = 0;
+			} else if (c == 'O') {
+				escapeState = ESCAPE_SS3;
+			} else if (c == 'b' || c == 'B') {
+				moveTo(previousWord());
+			} else if (c == 'f' || c == 'F') {
+				moveTo(nextWord());
+			}
+			return null;
+		case ESCAPE_CSI:
+			if (c >= '0' && c <= '9') {
+				escapeParameter = escapeParameter * 10 + c - '0';
+			} else if (c >= 0x40 && c <= 0x7e) {
+				escapeState = ESCAPE_NONE;
+				onEscape(c, escapeParameter);
+			}
+			return null;
+		case ESCAPE_SS3:
+			escapeState = ESCAPE_NONE;
+			onEscape(c, 0);
+			return null;
+		default:
+			break;
+		}
+		switch (c) {
+		case 27:
+			escapeState = ESCAPE_START;
+			break;
+		case '\r':
+			return enter();
+		case '\b':
+		case 127:
+			backspace();
+			break;
+		case 1:
+			moveTo(0);
+			break;
+		case 5:
+			moveTo(line.length());
+			break;
+		case 2:
+			moveTo(cursor - 1);
+			break;
+		case 6:
+			moveTo(cursor + 1);
+			break;
+		case 16:
+			browseHistory(1);
+			break;
+		case 14:
+			browseHistory(-1);
+			break;
+		case 4:
+			delete(cursor, cursor + 1);
+			break;
+		case 11:
+			delete(cursor, line.length());
+			break;
+		case 21:
+			delete(0, cursor);
+			break;
+		case 23:
+			delete(previousWord(), cursor);
+			break;
+		case 3:
+			cancel();
+			break;
+		case 12:
+			if (reader.echo) {
+				output.append(CLEAR_SCREEN).append(PROMPT);
+				redraw();
+			}
+			break;
+		case '\t':
+			complete();
+			break;
+		default:
+			if (c > 31 && c < 127) {
+				insert(String.valueOf(c));
+			}
+			break;
+		}
+		return null;
+	}
+
+	/**
+	 * Handles the escape sequences of the cursor keys (eg. "ESC [ A" or "ESC
+	 * [ 3 ~").
+	 */
+	protected void onEscape(char command, int parameter) {
+		switch (command) {
+		case 'A':
+			browseHistory(1);
+			break;
+		case 'B':
+			browseHistory(-1);
+			break;
+		case 'C':
+			moveTo(cursor + 1);
+			break;
+		case 'D':
+			moveTo(cursor - 1);
+			break;
+		case 'H':
+			moveTo(0);
+			break;
+		case 'F':
+			moveTo(line.length());
+			break;
+		case '~':
+			if (parameter == 1 || parameter == 7) {
+				moveTo(0);
+			} else if (parameter == 4 || parameter == 8) {
+				moveTo(line.length());
+			} else if (parameter == 3) {
+				delete(cursor, cursor + 1);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	// --- EDITING ---
+
+	protected String enter() {
+		if (reader.echo) {
+			output.append("\n\r");
+		}
+		String entered = line.toString();
+		line.setLength(0);
+		cursor = 0;
+		historyOffset = 0;
+		return entered;
+	}
+
+	protected void cancel() {
+		if (reader.echo) {
+			output.append("^C\r\n").append(PROMPT);
+		}
+		line.setLength(0);
+		cursor = 0;
+		historyOffset = 0;
+	}
+
+	protected void insert(String text) {
+		if (line.length() + text.length() > MAX_LENGTH) {
+			bell();
+			return;
+		}
+		line.insert(cursor, text);
+		cursor += text.length();
+		if (reader.echo) {
+			output.append(HIGHLIGHT);
+			render(cursor - text.length(), line.length());
+			output.append(NORMAL);
+			moveBack(line.length() - cursor);
+		}
+	}
+
+	protected void backspace() {
+		if (cursor == 0) {
+			return;
+		}
+		if (cursor == line.length()) {
+
+			// Most frequent case
+			line.setLength(--cursor);
+			if (reader.echo) {
+				output.append("\b \b");
+			}
+			return;
+		}
+		delete(cursor - 1, cursor);
+	}
+
+	/**
+	 * Deletes a range of the line, and moves the cursor to its beginning.
+	 */
+	protected void delete(int from, int to) {
+		to = Math.min(to, line.length());
+		if (from < 0 || from >= to) {
+			return;
+		}
+		moveTo(from);
+		line.delete(from, to);
+		if (reader.echo) {
+			output.append(HIGHLIGHT);
+			render(cursor, line.length());
+			output.append(NORMAL).append(ERASE_TO_END);
+			moveBack(line.length() - cursor);
+		}
+	}
+
+	/**
+	 * Replaces the whole line (eg. with a line from the history).
+	 */
+	protected void replaceLine(String text) {
+		moveTo(0);
+		line.setLength(0);
+		line.append(text);
+		cursor = line.length();
+		if (reader.echo) {
+			output.append(HIGHLIGHT);
+			render(0, line.length());
+			output.append(NORMAL).append(ERASE_TO_END);
+		}
+	}
+
+	// --- CURSOR MOVEMENT ---
+
+	protected void moveTo(int position) {
+		position = Math.max(0, Math.min(position, line.length()));
+		if (position < cursor) {
+			moveBack(cursor - position);
+		} else if (position > cursor && reader.echo) {
+			output.append("\u001B[").append(position - cursor).append('C');
+		}
+		cursor = position;
+	}
+
+	protected void moveBack(int columns) {
+		if (columns > 0 && reader.echo) {
+			output.append("\u001B[").append(columns).append('D');
+		}
+	}
+
+	protected int previousWord() {
+		int i = cursor;
+		while (i > 0 && line.charAt(i - 1) == ' ') {
+			i--;
+		}
+		while (i > 0 && line.charAt(i - 1) != ' ') {
+			i--;
+		}
+		return i;
+	}
+
+	protected int nextWord() {
+		int i = cursor;
+		int len = line.length();
+		while (i < len && line.charAt(i) == ' ') {
+			i++;
+		}
+		while (i < len && line.charAt(i) != ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	// --- HISTORY ---
+
+	/**
+	 * Adds a command line to the history (except the repeated lines).
+	 */
+	public void addHistory(String entered) {
+		if (history.length == 0 || entered.isEmpty()) {
+			return;
+		}
+		if (historyCount > 0 && entered.equals(getHistory(1))) {
+			return;
+		}
+		history[(historyStart + historyCount) % history.length] = entered;
+		if (historyCount < history.length) {
+			historyCount++;
+		} else {
+			historyStart = (historyStart + 1) % history.length;
+		}
+	}
+
+	/**
+	 * Returns a line from the history.
+	 *
+	 * @param offset
+	 *            1 = last line, 2 = the line before the last, etc.
+	 *
+	 * @return command line
+	 */
+	protected String getHistory(int offset) {
+		return history[(historyStart + historyCount - offset) % history.length];
+	}
+
+	protected void browseHistory(int step) {
+		if (!reader.loggedOn) {
+			return;
+		}
+		int offset = historyOffset + step;
+		if (offset < 0 || offset > historyCount) {
+			bell();
+			return;
+		}
+		if (historyOffset == 0) {
+			savedLine = line.toString();
+		}
+		historyOffset = offset;
+		replaceLine(offset == 0 ? savedLine : getHistory(offset));
+	}
+
+	// --- TAB COMPLETION ---
+
+	protected void complete() {
+		CompletionIndex index = reader.remoteRepl.completionIndex;
+		if (index == null || !reader.loggedOn || !reader.echo) {
+			return;
+		}
+		Completion completion = index.complete(line.substring(0, cursor));
+		if (completion == null || completion.total == 0) {
+			bell();
+			return;
+		}
+		int typed = cursor - completion.start;
+		if (completion.total == 1) {
+			String word = completion.candidates[0];
+			boolean separated = cursor < line.length() && line.charAt(cursor) == ' ';
+			insert(word.substring(typed) + (separated ? "" : " "));
+			return;
+		}
+		if (completion.prefix.length() > typed) {
+			insert(completion.prefix.substring(typed));
+			return;
+		}
+
+		// List the candidates (in columns)
+		int width = 0;
+		for (String candidate : completion.candidates) {
+			width = Math.max(width, candidate.length() + 2);
+		}
+		int columns = Math.max(1, SCREEN_WIDTH / width);
+		output.append("\r\n");
+		for (int i = 0; i < completion.candidates.length; i++) {
+			String candidate = completion.candidates[i];
+			output.append(candidate);
+			if ((i + 1) % columns == 0 || i == completion.candidates.length - 1) {
+				output.append("\r\n");
+			} else {
+				for (int n = candidate.length(); n < width; n++) {
+					output.append(' ');
+				}
+			}
+		}
+		if (completion.total > completion.candidates.length) {
+			output.append("\u001B[2m(").append(completion.total - completion.candidates.length)
+					.append(" more)\u001B[0m\r\n");
+		}
+		output.append(PROMPT);
+		redraw();
+	}
+
+	// --- RENDERING ---
+
+	/**
+	 * Prints the whole line (after the prompt).
+	 */
+	protected void redraw() {
+		output.append(HIGHLIGHT);
+		render(0, line.length());
+		output.append(NORMAL);
+		moveBack(line.length() - cursor);
+	}
+
+	protected void render(int from, int to) {
+		if (reader.maskPassword) {
+			for (int i = from; i < to; i++) {
+				output.append('*');
+			}
+		} else {
+			output.append(line, from, to);
+		}
+	}
+
+	protected void bell() {
+		if (reader.echo) {
+			output.append((char) 7);
+		}
+	}
+
+	protected void flush() {
+		if (output.length() > 0) {
+			reader.addEcho(output.toString().getBytes(StandardCharsets.US_ASCII));
+			output.setLength(0);
+		}
+	}
+
+}
@@ -38,6 +38,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import services.moleculer.ServiceBroker;
+import services.moleculer.repl.bench.JfrProfiler;
 import services.moleculer.service.Name;
 
 /**
@@ -141,7 +142,8 @@ public class LocalRepl extends Repl implements Runnable {
 		// Load built-in commands
 		load("Actions", "Broadcast", "BroadcastLocal", "Call", "Clear", "Close", "DCall", "Emit", "Env", "Events",
 				"Exit", "Find", "Gc", "Info", "Memory", "Nodes", "Props", "Services", "Threads", "Bench", "Debug",
-				"Ping", "Run");
+				"Ping", "Run", "BenchEvent", "BenchStream", "Profile",
+				"Sessions");
 
 		// Load custom commands
 		if (packagesToScan != null && packagesToScan.length > 0) {
@@ -268,8 +270,110 @@ public class LocalRepl extends Repl implements Runnable {
 
 	// --- COMMAND PROCESSOR ---
 
+	/**
+	 * Session of the local console.
+	 */
+	protected static final String LOCAL_SESSION = "console";
+
+	/**
+	 * Session of the running command (inherited by the nested commands, eg. by
+	 * "run" or "profile").
+	 */
+	protected static final ThreadLocal<String> currentSession = new ThreadLocal<>();
+
 	@Override
 	public void onCommand(PrintWriter out, String command) throws Exception {
+		String session = currentSession.get();
+		onCommand(out, command, session == null ? LOCAL_SESSION : session);
+	}
+
+	/**
+	 * Executes a command and records it as a JFR event.
+	 *
+	 * @param out
+	 *            output of the command
+	 * @param command
+	 *            command line
+	 * @param session
+	 *            "console" or the ID of the telnet session
+	 *
+	 * @throws Exception
+	 *             any I/O exception
+	 */
+	public void onCommand(PrintWriter out, String command, String session) throws Exception {
+		String previous = currentSession.get();
+		currentSession.set(session);
+		try {
+			if (JfrProfiler.isAvailable()) {
+				recordCommand(out, command, session);
+			} else {
+				executeCommand(out, command);
+			}
+		} finally {
+			if (previous == null) {
+				currentSession.remove();
+			} else {
+				currentSession.set(previous);
+			}
+		}
+	}
+
+	protected void recordCommand(PrintWriter out, String command, String session) throws Exception {
+		CommandEvent event = new CommandEvent();
+		if (!event.isEnabled()) {
+			executeCommand(out, command);
+			return;
+		}
+		CountingWriter counter = new CountingWriter(out);
+		event.begin();
+		try {
+			executeCommand(new PrintWriter(counter), command);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				String name = command == null ? "" : command.trim();
+				int i = name.indexOf(' ');
+				event.command = (i > -1 ? name.substring(0, i) : name).toLowerCase();
+				event.session = session;
+				event.outputBytes = counter.count;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Counts the written characters (the telnet output is US-ASCII, so this is
+	 * the number of the sent bytes).
+	 */
+	protected static class CountingWriter extends Writer {
+
+		protected final Writer out;
+
+		protected long count;
+
+		protected CountingWriter(Writer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			count += len;
+			out.write(cbuf, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.flush();
+		}
+
+	}
+
+	protected void executeCommand(PrintWriter out, String command) throws Exception {
 		try {
 			if (command == null) {
 				return;
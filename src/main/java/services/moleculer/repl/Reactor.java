@@ -0,0 +1,242 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector loop of the remote console. Each Reactor serves a subset of the
+ * telnet sessions (reading, echoing and writing) on its own thread. The
+ * sessions are accepted by the RemoteRepl and spread across the Reactors.
+ */
+public class Reactor implements Runnable {
+
+	// --- PARENT CONSOLE ---
+
+	protected final RemoteRepl remoteRepl;
+
+	// --- SELECTOR ---
+
+	protected final Selector selector;
+
+	// --- LOCK-FREE QUEUES ---
+
+	/**
+	 * Accepted channels, waiting for registration.
+	 */
+	protected final ConcurrentLinkedQueue<SocketChannel> acceptedChannels = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Keys with new output (queued by the command threads).
+	 */
+	protected final ConcurrentLinkedQueue<SelectionKey> writableKeys = new ConcurrentLinkedQueue<>();
+
+	// --- VARIABLES ---
+
+	/**
+	 * Number of sessions served by this Reactor.
+	 */
+	protected final AtomicInteger sessions = new AtomicInteger();
+
+	protected volatile boolean running = true;
+
+	// --- IDLE TIMEOUTS ---
+
+	/**
+	 * Resolution of the idle timeouts, in milliseconds.
+	 */
+	protected static final long TICK_MILLIS = 1000;
+
+	protected final TimerWheel<RemoteReader> idleTimers = new TimerWheel<>(TICK_MILLIS, 512,
+			System.currentTimeMillis());
+
+	// --- CONSTRUCTOR ---
+
+	public Reactor(RemoteRepl remoteRepl) throws IOException {
+		this.remoteRepl = remoteRepl;
+		this.selector = Selector.open();
+	}
+
+	// --- METHODS INVOKED BY OTHER THREADS ---
+
+	/**
+	 * Hands over an accepted channel to this Reactor.
+	 *
+	 * @param channel
+	 *            accepted (blocking or non-blocking) channel
+	 */
+	public void register(SocketChannel channel) {
+		sessions.incrementAndGet();
+		acceptedChannels.offer(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Switches the key to write mode (from any thread).
+	 *
+	 * @param key
+	 *            key of the session
+	 */
+	public void markAsWritable(SelectionKey key) {
+		writableKeys.offer(key);
+		selector.wakeup();
+	}
+
+	// --- SELECTOR LOOP ---
+
+	@Override
+	public void run() {
+		while (running && !Thread.currentThread().isInterrupted()) {
+
+			// Waiting for sockets
+			int n;
+			long timeout = remoteRepl.socketTimeout;
+			try {
+				n = timeout > 0 ? selector.select(TICK_MILLIS) : selector.select();
+			} catch (Exception closed) {
+				break;
+			}
+			if (n > 0) {
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					RemoteReader reader = (RemoteReader) key.attachment();
+					if (reader == null || !key.isValid()) {
+						continue;
+					}
+					try {
+
+						// Read data (also while the output is being sent)
+						if (key.isReadable()) {
+							reader.readPacket();
+						}
+
+						// Write data
+						if (key.isValid() && key.isWritable()) {
+							reader.writePacket();
+						}
+					} catch (CancelledKeyException cancelled) {
+						reader.close();
+					}
+				}
+			}
+
+			// Register new sessions
+			SocketChannel channel;
+			while ((channel = acceptedChannels.poll()) != null) {
+				try {
+					channel.configureBlocking(false);
+					SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+					RemoteReader reader = remoteRepl.createReader(this, channel, key);
+					key.attach(reader);
+					if (timeout > 0) {
+						idleTimers.schedule(reader, reader.lastActivity + timeout);
+					}
+				} catch (Exception cause) {
+					sessions.decrementAndGet();
+					remoteRepl.openedSessions.decrementAndGet();
+					try {
+						channel.close();
+					} catch (Exception ignored) {
+					}
+				}
+			}
+
+			// Switch to write mode
+			SelectionKey key;
+			while ((key = writableKeys.poll()) != null) {
+				RemoteReader reader = (RemoteReader) key.attachment();
+				if (reader != null) {
+					reader.writeRequested.set(false);
+				}
+				if (key.isValid()) {
+					try {
+						key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					} catch (CancelledKeyException ignored) {
+					}
+				}
+			}
+
+			// Close idle sessions
+			if (timeout > 0) {
+				idleTimers.advance(System.currentTimeMillis(), this::checkIdle);
+			}
+		}
+	}
+
+	protected void checkIdle(RemoteReader reader, long now) {
+		if (reader.closed.get()) {
+			return;
+		}
+		long timeout = remoteRepl.socketTimeout;
+		if (timeout < 1 || reader.pendingCommands.get() > 0) {
+
+			// Running command
+			idleTimers.schedule(reader, now + Math.max(timeout, TICK_MILLIS));
+			return;
+		}
+		long deadline = reader.lastActivity + timeout;
+		if (deadline <= now) {
+			reader.timeout();
+		} else {
+			idleTimers.schedule(reader, deadline);
+		}
+	}
+
+	// --- STOP REACTOR ---
+
+	public void close() {
+		running = false;
+		try {
+			selector.wakeup();
+			selector.close();
+		} catch (Exception ignored) {
+		}
+		SocketChannel channel;
+		while ((channel = acceptedChannels.poll()) != null) {
+			try {
+				channel.close();
+			} catch (Exception ignored) {
+			}
+		}
+		writableKeys.clear();
+	}
+
+	// --- GETTERS ---
+
+	public int getSessions() {
+		return sessions.get();
+	}
+
+}
@@ -27,59 +27,139 @@ package services.moleculer.repl;
 
 import static services.moleculer.repl.commands.Info.getSoftwareVersion;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TCP reader / writer for the telnet based REPL console.
  */
 public class RemoteReader {
 
-	// --- SHARED BUFFER ---
+	// --- CONSTANTS ---
 
-	private static final ByteBuffer requestBuffer = ByteBuffer.allocate(1);
+	protected static final byte[] TIMEOUT = "\r\nSession timed out.\r\n".getBytes();
+	protected static final byte[] BUSY = "\u001B[2m[busy] command queued\u001B[0m\r\n".getBytes();
 
-	// --- CONSTANTS ---
+	// --- TELNET COMMANDS ---
+
+	protected static final int IAC = 255;
+	protected static final int SB = 250;
+	protected static final int SE = 240;
+	protected static final int WILL = 251;
+	protected static final int DONT = 254;
 
-	protected static final byte[] LINE_BREAK = { 10, 13 };
-	protected static final byte[] BACKSPACE = { (byte) '\b', (byte) ' ', (byte) '\b' };
-	protected static final byte[] HIGHLIGHT = "\u001B[1m".getBytes();
-	protected static final byte[] NORMAL = "\u001B[0m".getBytes();
+	// --- STATES OF THE TELNET PARSER ---
+
+	protected static final int STATE_DATA = 0;
+	protected static final int STATE_IAC = 1;
+	protected static final int STATE_OPTION = 2;
+	protected static final int STATE_SUBNEGOTIATION = 3;
+	protected static final int STATE_SUBNEGOTIATION_IAC = 4;
 
 	// --- INITIAL PARAMETERS ---
 
 	protected final RemoteRepl remoteRepl;
+	protected final Reactor reactor;
 	protected final SocketChannel channel;
+
+	/**
+	 * TLS layer (null = plain telnet).
+	 */
+	protected final TlsChannel tls;
 	protected final SelectionKey key;
 
 	protected final boolean echo;
 	protected final String username;
 	protected final String password;
+	protected final String address;
 
 	// --- VARIABLES ---
 
 	protected boolean maskPassword;
 	protected boolean loggedOn;
-	protected byte skip;
+
+	/**
+	 * Login failed, the input is ignored until the (delayed) close.
+	 */
+	protected boolean loginFailed;
+	protected int telnetState = STATE_DATA;
+
+	/**
+	 * Line editing, history and tab completion (used by the selector thread).
+	 */
+	protected final LineEditor editor;
+
+	// --- COMMAND EXECUTION ---
+
+	/**
+	 * Executes the commands of this session one after the other.
+	 */
+	protected final SerialExecutor commands;
+
+	/**
+	 * Number of running and queued commands.
+	 */
+	protected final AtomicInteger pendingCommands = new AtomicInteger();
+
+	// --- SESSION METRICS ---
+
+	protected static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	protected final int id;
+	protected final long connectedAt = System.currentTimeMillis();
+	protected volatile long lastActivity = connectedAt;
+
+	protected final AtomicLong bytesIn = new AtomicLong();
+	protected final AtomicLong bytesOut = new AtomicLong();
+	protected final AtomicLong commandCount = new AtomicLong();
+	protected final AtomicLong cpuTime = new AtomicLong();
 	
 	// --- CONSTRUCTOR ---
 
-	public RemoteReader(RemoteRepl remoteRepl, SocketChannel channel, SelectionKey key, boolean authenticated,
-			boolean echo, String username, String password) {
+	public RemoteReader(RemoteRepl remoteRepl, Reactor reactor, SocketChannel channel, TlsChannel tls,
+			SelectionKey key, boolean authenticated, boolean echo, String username, String password) {
 		this.remoteRepl = remoteRepl;
+		this.reactor = reactor;
 		this.channel = channel;
+		this.tls = tls;
 		this.key = key;
 		this.echo = echo;
 		this.username = username;
 		this.password = password;
 		this.loggedOn = !authenticated;
+		this.commands = new SerialExecutor(remoteRepl.commandExecutor);
+		this.id = remoteRepl.sessionCounter.incrementAndGet();
+		this.editor = new LineEditor(this, remoteRepl.historySize);
+		String remoteAddress;
+		try {
+			remoteAddress = String.valueOf(channel.getRemoteAddress());
+		} catch (Exception unknown) {
+			remoteAddress = "telnet";
+		}
+		this.address = remoteAddress;
+	}
+
+	// --- SEND HEADER ---
+
+	/**
+	 * Sends the banner (invoked by the Reactor, after the registration).
+	 */
+	protected void start() {
 		String header = "Moleculer Microservice Framework V" + getSoftwareVersion();
 		int len = (79 - header.length()) / 2;
 		String spaces = "                                                                               ";
@@ -95,141 +175,245 @@ public class RemoteReader {
 			header += "mol $ ";
 		}
 		addString(header, true);
+
+		// Send telnet header
+		if (echo) {
+			addBytes(RemoteRepl.TELNET_HEADER, true);
+		}
 	}
 
 	// --- READING FROM SOCKET ---
 
-	protected static final int MAX_LEN = 1000;
-
-	protected char[] request = new char[MAX_LEN];
-
-	protected int counter = 0;
-
 	protected void readPacket() {
+		ByteBuffer in = remoteRepl.bufferPool.acquire();
 		try {
-			synchronized (requestBuffer) {
-				requestBuffer.clear();
-				int len = channel.read(requestBuffer);
+
+			// Read all available bytes (eg. a pasted script) at once
+			do {
+				in.clear();
+				int len = tls == null ? channel.read(in) : tls.read(in);
 				if (len == -1) {
 					throw new IOException();
 				}
-				if (len == 1) {
-					int read = requestBuffer.array()[0] & 0xff;
-					if (skip != 0) {
-						skip--;
-						return;
-					}
-					if (read == 255) {
-						skip = 2;
-						return;
-					}
-					char c = (char) read;
-					if ((c > 31 && c < 128) || c == '\r' || c == '\n' || c == '\b') {
-
-						// Enter?
-						if (c == '\n') {
-							return;
-						}
-						if (c == '\r') {
-
-							// New line
-							if (echo) {
-								addBytes(LINE_BREAK, true);
-							}
-
-							if (counter != 0) {
-
-								// Command line
-								String commandLine = new String(request, 0, counter);
-								commandLine = commandLine.trim();
-
-								// Execute command
-								if (commandLine.length() != 0) {
-									processCommand(commandLine);
-								}
-							}
-
-							// Clear counter
-							counter = 0;
-						} else {
-
-							// Handle backspace
-							if (c == '\b') {
-								if (counter > 0) {
-
-									// Send back the backspace
-									if (echo) {
-										addBytes(BACKSPACE, true);
-									}
-
-									// Decrease counter
-									counter--;
-								}
-							} else {
-
-								// Send back the character
-								if (echo) {
-									addBytes(HIGHLIGHT, true);
-									if (maskPassword) {
-										addChar('*');
-									} else {
-										addChar(c);
-									}
-									addBytes(NORMAL, true);
-								}
-
-								// Increase counter
-								request[counter] = c;
-								counter++;
-								if (counter == MAX_LEN) {
-
-									// Too long row!
-									addString("Too long row!", true);
-									counter = 0;
-								}
-							}
-						}
-					}
+				if (len > 0) {
+					bytesIn.addAndGet(len);
+					lastActivity = System.currentTimeMillis();
+					in.flip();
+					onBytes(in);
 				}
+			} while (tls != null && tls.hasBufferedInput());
+
+			// Send back the echo of the whole packet at once
+			flushEcho();
+
+			// Continue the TLS handshake (or send the data queued during it)
+			if (tls != null && (tls.hasPendingOutput()
+					|| (tls.isReady() && (writeCount > 0 || !responseBuffers.isEmpty())))) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 			}
+
 		} catch (Exception e) {
 
 			// Close channel
 			close();
+		} finally {
+			remoteRepl.bufferPool.release(in);
+		}
+	}
+
+	protected void onBytes(ByteBuffer in) throws Exception {
+		while (in.hasRemaining() && !loginFailed) {
+			int read = in.get() & 0xff;
+			switch (telnetState) {
+			case STATE_DATA:
+				if (read == IAC) {
+					telnetState = STATE_IAC;
+				} else {
+					onChar((char) read);
+				}
+				break;
+			case STATE_IAC:
+				if (read >= WILL && read <= DONT) {
+
+					// WILL / WONT / DO / DONT + option code
+					telnetState = STATE_OPTION;
+				} else if (read == SB) {
+					telnetState = STATE_SUBNEGOTIATION;
+				} else {
+
+					// Escaped 255 or two-byte command (NOP, AYT, etc.)
+					telnetState = STATE_DATA;
+				}
+				break;
+			case STATE_OPTION:
+				telnetState = STATE_DATA;
+				break;
+			case STATE_SUBNEGOTIATION:
+				if (read == IAC) {
+					telnetState = STATE_SUBNEGOTIATION_IAC;
+				}
+				break;
+			default:
+
+				// IAC SE closes the subnegotiation, IAC IAC is a data byte
+				telnetState = read == SE ? STATE_DATA : STATE_SUBNEGOTIATION;
+				break;
+			}
+		}
+	}
+
+	protected void onChar(char c) throws Exception {
+		boolean command = loggedOn;
+		String commandLine = editor.onChar(c);
+		if (commandLine == null) {
+			return;
+		}
+
+		// Execute command
+		commandLine = commandLine.trim();
+		if (commandLine.length() != 0) {
+			if (command) {
+				editor.addHistory(commandLine);
+			}
+			processCommand(commandLine);
 		}
 	}
 
 	// --- WRITING TO SOCKET ---
 
-	protected final LinkedList<ByteBuffer> responseBuffers = new LinkedList<ByteBuffer>();
+	protected final ConcurrentLinkedQueue<ByteBuffer> responseBuffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * True if the session is already queued for switching to write mode.
+	 */
+	protected final AtomicBoolean writeRequested = new AtomicBoolean();
+
+	/**
+	 * Maximum number of buffers sent by one (gathering) write.
+	 */
+	protected static final int MAX_GATHERED_BUFFERS = 64;
+
+	/**
+	 * Buffers of the current write operation (used by the selector thread).
+	 */
+	protected final ByteBuffer[] writeBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
+	protected int writeCount;
+
+	/**
+	 * Queued after the last buffer of a connection that must be closed.
+	 */
+	protected static final ByteBuffer CLOSE_MARKER = ByteBuffer.allocate(0);
+
+	/**
+	 * The close marker has been taken from the queue (used by the selector
+	 * thread).
+	 */
+	protected boolean closing;
+
+	/**
+	 * Number of queued (unsent) bytes.
+	 */
+	protected final AtomicLong queuedBytes = new AtomicLong();
+
+	protected final Object outputLock = new Object();
+
+	/**
+	 * Blocks the (command) thread while the queued output of this session is
+	 * above the high-water mark.
+	 *
+	 * @throws IOException
+	 *             if the session is closed or the thread is interrupted
+	 */
+	protected void awaitWritable() throws IOException {
+		long highWaterMark = remoteRepl.outputHighWaterMark;
+		if (queuedBytes.get() <= highWaterMark) {
+			return;
+		}
+		synchronized (outputLock) {
+			while (queuedBytes.get() > highWaterMark / 2) {
+				if (!channel.isOpen()) {
+					throw new IOException("Telnet session closed!");
+				}
+				try {
+					outputLock.wait(100);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
 
-	protected ByteBuffer currentBuffer;
+	protected void sent(long written) {
+		long half = remoteRepl.outputHighWaterMark / 2;
+		long queued = queuedBytes.addAndGet(-written);
+		if (queued <= half && queued + written > half) {
+			synchronized (outputLock) {
+				outputLock.notifyAll();
+			}
+		}
+	}
 
 	protected void writePacket() {
 		try {
-			if (currentBuffer == null) {
-				synchronized (responseBuffers) {
-					if (responseBuffers.isEmpty()) {
-						key.interestOps(SelectionKey.OP_READ);
+
+			// Take all queued buffers (up to the limit)
+			ByteBuffer next;
+			while (!closing && writeCount < MAX_GATHERED_BUFFERS && (next = responseBuffers.poll()) != null) {
+				if (next == CLOSE_MARKER) {
+					closing = true;
+					break;
+				}
+				writeBuffers[writeCount++] = next;
+			}
+			if (writeCount == 0) {
+				if (tls != null && tls.hasPendingOutput()) {
+
+					// Handshake messages or encrypted data
+					tls.write(writeBuffers, 0, 0);
+					if (tls.hasPendingOutput()) {
 						return;
 					}
-					currentBuffer = (ByteBuffer) responseBuffers.removeFirst();
 				}
+				if (closing) {
+					close();
+					return;
+				}
+				key.interestOps(SelectionKey.OP_READ);
+
+				// A command thread may have queued a buffer meanwhile
+				if (!responseBuffers.isEmpty()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+				return;
 			}
 
-			// Write data
-			channel.write(currentBuffer);
+			// Write data (with one syscall)
+			long written = tls == null ? channel.write(writeBuffers, 0, writeCount)
+					: tls.write(writeBuffers, 0, writeCount);
+			if (tls != null && !tls.isReady() && !tls.hasPendingOutput()) {
 
-			// Clear buffer
-			if (currentBuffer.hasRemaining()) {
-				synchronized (responseBuffers) {
-					if (responseBuffers.isEmpty()) {
-						key.interestOps(SelectionKey.OP_READ);
-					}
-				}
+				// Waiting for the handshake messages of the client
+				key.interestOps(SelectionKey.OP_READ);
 				return;
 			}
-			currentBuffer = null;
+			if (written > 0) {
+				bytesOut.addAndGet(written);
+				sent(written);
+			}
+
+			// Remove the sent buffers, the rest is sent at the next write event
+			int sentBuffers = 0;
+			while (sentBuffers < writeCount && !writeBuffers[sentBuffers].hasRemaining()) {
+				sentBuffers++;
+			}
+			if (sentBuffers > 0) {
+				int remaining = writeCount - sentBuffers;
+				System.arraycopy(writeBuffers, sentBuffers, writeBuffers, 0, remaining);
+				Arrays.fill(writeBuffers, remaining, writeCount, null);
+				writeCount = remaining;
+			}
 
 		} catch (Exception e) {
 
@@ -238,26 +422,50 @@ public class RemoteReader {
 		}
 	}
 
-	protected void addChar(char c) {
-		byte[] bytes = new byte[1];
-		bytes[0] = (byte) c;
-		ByteBuffer buffer = ByteBuffer.wrap(bytes);
-		synchronized (responseBuffers) {
-			responseBuffers.addLast(buffer);
-			key.interestOps(SelectionKey.OP_WRITE);
+	// --- ECHO BUFFER (USED BY THE SELECTOR THREAD) ---
+
+	protected byte[] echoBuffer = new byte[256];
+
+	protected int echoCount;
+
+	protected void addEcho(byte[] bytes) {
+		ensureEchoCapacity(bytes.length);
+		System.arraycopy(bytes, 0, echoBuffer, echoCount, bytes.length);
+		echoCount += bytes.length;
+	}
+
+	protected void ensureEchoCapacity(int len) {
+		if (echoCount + len > echoBuffer.length) {
+			echoBuffer = Arrays.copyOf(echoBuffer, Math.max(echoBuffer.length * 2, echoCount + len));
+		}
+	}
+
+	protected void flushEcho() {
+		if (echoCount > 0) {
+			byte[] bytes = Arrays.copyOf(echoBuffer, echoCount);
+			echoCount = 0;
+			enqueue(bytes, true);
 		}
 	}
 
+	// --- QUEUE RESPONSE ---
+
+	/**
+	 * Adds bytes to the output queue.
+	 *
+	 * @param bytes
+	 *            bytes to send
+	 * @param directSet
+	 *            true = invoked by the selector thread, false = invoked by a
+	 *            command thread
+	 */
 	protected void addBytes(byte[] bytes, boolean directSet) {
-		ByteBuffer buffer = ByteBuffer.wrap(bytes);
-		synchronized (responseBuffers) {
-			responseBuffers.addLast(buffer);
-			if (directSet) {
-				key.interestOps(SelectionKey.OP_WRITE);
-			} else {
-				remoteRepl.markAsWritable(key);
-			}
+		if (directSet) {
+
+			// Keep the order of the pending echo and the response
+			flushEcho();
 		}
+		enqueue(bytes, directSet);
 	}
 
 	protected void addString(String string, boolean directSet) {
@@ -269,29 +477,52 @@ public class RemoteReader {
 		}
 		if (bytes != null) {
 			try {
-				ByteBuffer buffer = ByteBuffer.wrap(bytes);
-				synchronized (responseBuffers) {
-					responseBuffers.addLast(buffer);
-					if (directSet) {
-						key.interestOps(SelectionKey.OP_WRITE);
-					} else {
-						remoteRepl.markAsWritable(key);
-					}
-				}
+				addBytes(bytes, directSet);
 			} catch (Exception ignored) {
 			}
 		}
 	}
 
+	protected void enqueue(byte[] bytes, boolean directSet) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		queuedBytes.addAndGet(bytes.length);
+		responseBuffers.offer(buffer);
+		if (directSet) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else if (writeRequested.compareAndSet(false, true)) {
+			reactor.markAsWritable(key);
+		}
+	}
+
+	/**
+	 * Closes the connection after the queued output has been sent (invoked by
+	 * a command thread).
+	 */
+	protected void closeWhenSent() {
+		responseBuffers.offer(CLOSE_MARKER);
+		if (writeRequested.compareAndSet(false, true)) {
+			reactor.markAsWritable(key);
+		}
+	}
+
 	// --- CLOSE CHANNEL ---
 
+	protected final AtomicBoolean closed = new AtomicBoolean();
+
 	protected void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		if (tls != null) {
+			tls.close();
+		}
 		if (channel != null) {
 			try {
 				channel.close();
 			} catch (Exception ignored) {
 			}
 		}
+		cancelCommand();
 		remoteRepl.removeBuffer(this);
 	}
 
@@ -323,9 +554,15 @@ public class RemoteReader {
 			}
 			if (error != null) {
 				error = "\r\n\r\nAccess denied! " + error + (char) 7;
-				channel.write(ByteBuffer.wrap(error.getBytes(StandardCharsets.US_ASCII)));
-				Thread.sleep(1000);
-				close();
+				addString(error, true);
+
+				// Delay the close without blocking the selector thread
+				loginFailed = true;
+				try {
+					remoteRepl.scheduler.schedule(this::closeWhenSent, 1, TimeUnit.SECONDS);
+				} catch (Exception stopped) {
+					closeWhenSent();
+				}
 				return;
 			}
 
@@ -341,23 +578,185 @@ public class RemoteReader {
 			return;
 		}
 
-		// Invoke processor
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		PrintStream printStream = new PrintStream(baos, true, "US-ASCII");
-		ColorWriter colorWriter = new ColorWriter(printStream);
-		PrintWriter printWriter = new PrintWriter(colorWriter, true);
 		if ("r".equalsIgnoreCase(command) || "repeat".equalsIgnoreCase(command)) {
 			command = lastCommand;
 		}
 		if (command.equals("help") || command.startsWith("nodes") || command.startsWith("actions")) {
 			command += " telnet";
 		}
-		remoteRepl.onCommand(printWriter, command);
-		printWriter.print("mol $ ");
 		lastCommand = command;
 
-		// Send back response
-		addBytes(baos.toByteArray(), true);
+		// Invoke processor (off the selector thread, in order of input)
+		if (pendingCommands.getAndIncrement() > 0) {
+			addBytes(BUSY, true);
+		}
+		String commandLine = command;
+		try {
+			commands.execute(() -> {
+				try {
+					executeCommand(commandLine);
+				} finally {
+					pendingCommands.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException stopped) {
+			pendingCommands.decrementAndGet();
+		}
+	}
+
+	protected void executeCommand(String command) {
+		if (!channel.isOpen()) {
+			return;
+		}
+		commandCount.incrementAndGet();
+		long cpuStart = currentThreadCpuTime();
+		beginCommand();
+		try {
+
+			// Output is sent line by line, while the command is running
+			SessionOutputStream out = createOutputStream();
+			PrintStream printStream = new PrintStream(out, true, "US-ASCII");
+			ColorWriter colorWriter = new ColorWriter(printStream);
+			PrintWriter printWriter = new PrintWriter(colorWriter, true);
+			remoteRepl.onCommand(printWriter, command, enteredName == null ? address : enteredName + "@" + address);
+			printWriter.print("mol $ ");
+			printStream.flush();
+		} catch (Exception cause) {
+			addText("Command execution failed!\r\nmol $ ", false);
+		} finally {
+			endCommand();
+			long cpuEnd = currentThreadCpuTime();
+			if (cpuStart > -1 && cpuEnd > -1) {
+				cpuTime.addAndGet(cpuEnd - cpuStart);
+			}
+		}
+	}
+
+	// --- CANCELLATION ---
+
+	/**
+	 * Thread of the running command (guarded by "commandLock").
+	 */
+	protected Thread commandThread;
+
+	protected final Object commandLock = new Object();
+
+	protected void beginCommand() {
+		synchronized (commandLock) {
+			commandThread = Thread.currentThread();
+		}
+	}
+
+	protected void endCommand() {
+		synchronized (commandLock) {
+			commandThread = null;
+
+			// Do not leak the cancellation into the next task of the pool
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Interrupts the running command (when the session is closed), so
+	 * long-running commands (eg. "bench") stop.
+	 */
+	protected void cancelCommand() {
+		synchronized (commandLock) {
+			if (commandThread != null) {
+				commandThread.interrupt();
+			}
+		}
+	}
+
+	protected SessionOutputStream createOutputStream() {
+		return new SessionOutputStream(this, remoteRepl.bufferSize);
+	}
+
+	/**
+	 * Sends a text message (to the terminal).
+	 */
+	protected void addText(String text, boolean directSet) {
+		addString(text, directSet);
+	}
+
+	protected static long currentThreadCpuTime() {
+		try {
+			return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+		} catch (Exception unsupported) {
+			return -1;
+		}
+	}
+
+	// --- IDLE TIMEOUT ---
+
+	protected void timeout() {
+		try {
+			if (tls == null) {
+				channel.write(ByteBuffer.wrap(TIMEOUT));
+			} else {
+				tls.write(new ByteBuffer[] { ByteBuffer.wrap(TIMEOUT) }, 0, 1);
+			}
+		} catch (Exception ignored) {
+		}
+		close();
+	}
+
+	// --- SESSION INFO ---
+
+	public int getId() {
+		return id;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public String getUser() {
+		if (!loggedOn) {
+			return null;
+		}
+		return enteredName == null ? "anonymous" : enteredName;
+	}
+
+	public long getConnectedAt() {
+		return connectedAt;
+	}
+
+	public long getLastActivity() {
+		return lastActivity;
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	public long getQueuedBytes() {
+		return queuedBytes.get();
+	}
+
+	public long getCommandCount() {
+		return commandCount.get();
+	}
+
+	/**
+	 * Returns the CPU time of the executed commands.
+	 *
+	 * @return CPU time in nanoseconds (0 if unsupported)
+	 */
+	public long getCpuTime() {
+		return cpuTime.get();
+	}
+
+	public int getPendingCommands() {
+		return pendingCommands.get();
+	}
+
+	public boolean isClosed() {
+		return closed.get();
 	}
 
 }
\ No newline at end of file
@@ -28,19 +28,32 @@ package services.moleculer.repl;
 import static services.moleculer.util.CommonUtils.getHostName;
 import static services.moleculer.util.CommonUtils.nameOf;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
 import java.util.Iterator;
-import java.util.LinkedList;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import services.moleculer.repl.bench.VirtualThreads;
 import services.moleculer.service.Name;
 
 /**
@@ -57,8 +70,18 @@ import services.moleculer.service.Name;
  * telnet localhost<br>
  * <br>
  * The telnet provides for logon with a password, the default username and
- * password is "admin" / "admin". Nevertheless the telnet connection is not
- * secure.
+ * password is "admin" / "admin". Nevertheless the plain telnet connection is
+ * not secure. In TLS mode the console requires a key store:<br>
+ * <br>
+ * keytool -genkeypair -alias repl -keyalg EC -dname "CN=localhost"
+ * -storetype PKCS12 -keystore repl.p12<br>
+ * <br>
+ * r.setTls(true);<br>
+ * r.setKeyStore("repl.p12");<br>
+ * r.setKeyStorePassword("secret");<br>
+ * <br>
+ * ...then connect with a TLS-capable client (eg. "telnet-ssl -z ssl host
+ * port" or "openssl s_client -connect host:port").
  *
  * @see LocalRepl
  */
@@ -83,14 +106,16 @@ public class RemoteRepl extends LocalRepl {
 	protected boolean echo = true;
 
 	/**
-	 * Socket socketTimeout, in milliseconds (0 = no timeout).
+	 * Idle timeout of the telnet sessions, in milliseconds (0 = no timeout).
+	 * Sessions without input (and without running command) are closed after
+	 * this time.
 	 */
-	protected int socketTimeout;
+	protected int socketTimeout = 30 * 60 * 1000;
 
 	/**
 	 * Maximum number of opened telnet sessions.
 	 */
-	protected int maxSessions = 8;
+	protected int maxSessions = 256;
 
 	/**
 	 * Need username / password?
@@ -108,46 +133,228 @@ public class RemoteRepl extends LocalRepl {
 	 */
 	protected String password = "admin";
 
-	protected final LinkedList<RemoteReader> buffers = new LinkedList<>();
-	protected final LinkedList<SelectionKey> writableKeys = new LinkedList<>();
+	// --- TLS ---
+
+	/**
+	 * Use TLS (instead of plain telnet).
+	 */
+	protected boolean tls;
+
+	/**
+	 * Path of the key store file (in TLS mode).
+	 */
+	protected String keyStore;
+
+	protected String keyStorePassword = "";
+
+	protected String keyStoreType = "PKCS12";
+
+	/**
+	 * Number of the cached TLS sessions (for the resumption of the sessions
+	 * without full handshake).
+	 */
+	protected int tlsSessionCacheSize = 1000;
+
+	/**
+	 * Lifetime of the cached TLS sessions, in seconds.
+	 */
+	protected int tlsSessionTimeout = 24 * 60 * 60;
+
+	/**
+	 * Custom SSLContext (optional, it overrides the key store settings).
+	 */
+	protected SSLContext sslContext;
+
+	protected SSLContext serverContext;
+	protected BufferPool tlsBufferPool;
+
+	/**
+	 * Size of the (pooled) network buffers, in bytes.
+	 */
+	protected int bufferSize = 8192;
+
+	/**
+	 * Maximum number of idle network buffers kept in the pool.
+	 */
+	protected int maxPooledBuffers = 64;
+
+	/**
+	 * Maximum size of the unsent output of a telnet session, in bytes. When
+	 * reached, the command that produces the output is paused until the client
+	 * reads half of it.
+	 */
+	protected long outputHighWaterMark = 1024 * 1024;
+
+	protected BufferPool bufferPool;
+
+	/**
+	 * Number of command lines in the history of a telnet session.
+	 */
+	protected int historySize = 100;
+
+	/**
+	 * Maximum age of the tab completion index (names of the commands, actions,
+	 * events and nodes), in milliseconds.
+	 */
+	protected long completionRefresh = 5000;
+
+	protected CompletionIndex completionIndex;
+
+	/**
+	 * Executes the telnet commands (on virtual threads, if the JVM supports
+	 * them), so a long-running command does not block the other sessions.
+	 */
+	protected ExecutorService commandExecutor;
+
+	/**
+	 * Timer of the delayed tasks (eg. closing after a failed login).
+	 */
+	protected ScheduledExecutorService scheduler;
+
+	/**
+	 * Execute the telnet commands on virtual threads (Java 21+). The CPU time
+	 * of the sessions can be measured only on platform threads.
+	 */
+	protected boolean virtualThreads;
+
+	/**
+	 * Number of Reactor (selector) threads, the sessions are spread across
+	 * them.
+	 */
+	protected int reactorThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	protected final Set<RemoteReader> sessions = ConcurrentHashMap.newKeySet();
+	protected final AtomicInteger openedSessions = new AtomicInteger();
+	protected final AtomicInteger sessionCounter = new AtomicInteger();
+
+	/**
+	 * HTTP / WebSocket port (0 = disabled).
+	 */
+	protected int httpPort;
+
+	/**
+	 * Web pages (eg. "https://admin.example.com") which may call the HTTP /
+	 * WebSocket console from a browser (null = requests with an "Origin" header
+	 * are rejected).
+	 */
+	protected String[] allowedOrigins;
 
 	protected ServerSocketChannel serverChannel;
+	protected ServerSocketChannel httpChannel;
 	protected Selector selector;
 
+	protected Reactor[] reactors;
+	protected ExecutorService reactorExecutor;
+
 	// --- START TCP READER ---
 
 	@Override
 	protected void startReading() {
 		try {
+			bufferPool = new BufferPool(bufferSize, maxPooledBuffers);
+			if (tls) {
+				serverContext = createSSLContext();
+				SSLSession session = serverContext.createSSLEngine().getSession();
+				int packetSize = Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+				tlsBufferPool = new BufferPool(packetSize, maxPooledBuffers);
+			} else {
+				serverContext = null;
+			}
+			scheduler = broker.getConfig().getScheduler();
+			commandExecutor = virtualThreads && VirtualThreads.isSupported() ? VirtualThreads.newExecutor()
+					: Executors.newCachedThreadPool();
+
+			// Start Reactors
+			reactors = new Reactor[Math.max(1, reactorThreads)];
+			reactorExecutor = Executors.newFixedThreadPool(reactors.length);
+			for (int i = 0; i < reactors.length; i++) {
+				reactors[i] = new Reactor(this);
+				reactorExecutor.execute(reactors[i]);
+			}
+
+			// Start acceptor
 			serverChannel = ServerSocketChannel.open();
 			ServerSocket serverSocket = serverChannel.socket();
 			serverSocket.bind(new InetSocketAddress(port));
 			serverChannel.configureBlocking(false);
 			selector = Selector.open();
 			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+			if (httpPort > 0) {
+				httpChannel = ServerSocketChannel.open();
+				httpChannel.socket().bind(new InetSocketAddress(httpPort));
+				httpChannel.configureBlocking(false);
+				httpChannel.register(selector, SelectionKey.OP_ACCEPT);
+			}
 			super.startReading();
 
+			// Build the index of the tab completion (in background)
+			completionIndex = new CompletionIndex(this, broker, commandExecutor, completionRefresh);
+			completionIndex.refresh();
+
 		} catch (Exception cause) {
 			logger.error("Unable to start telnet!", cause);
 		}
 	}
 
+	/**
+	 * Creates the (shared) SSLContext of the TLS sessions. The server-side
+	 * session cache of this context is used for the session resumption.
+	 *
+	 * @return server SSLContext
+	 *
+	 * @throws Exception
+	 *             if the key store cannot be loaded
+	 */
+	protected SSLContext createSSLContext() throws Exception {
+		SSLContext context = sslContext;
+		if (context == null) {
+			if (keyStore == null || keyStore.isEmpty()) {
+				throw new IllegalArgumentException("The \"keyStore\" property is required in TLS mode!");
+			}
+			char[] secret = keyStorePassword == null ? new char[0] : keyStorePassword.toCharArray();
+			KeyStore store = KeyStore.getInstance(keyStoreType);
+			try (InputStream in = new FileInputStream(keyStore)) {
+				store.load(in, secret);
+			}
+			KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			factory.init(store, secret);
+			context = SSLContext.getInstance("TLS");
+			context.init(factory.getKeyManagers(), null, null);
+		}
+		SSLSessionContext sessions = context.getServerSessionContext();
+		if (sessions != null) {
+			sessions.setSessionCacheSize(tlsSessionCacheSize);
+			sessions.setSessionTimeout(tlsSessionTimeout);
+		}
+		return context;
+	}
+
 	protected void showStartMessage() {
-		logger.info(nameOf(this, true) + " started. Type \"telnet " + getHostName() + ' ' + port + "\" to connect.");
+		if (tls) {
+			logger.info(nameOf(this, true) + " started in TLS mode. Type \"openssl s_client -connect " + getHostName()
+					+ ':' + port + "\" to connect.");
+		} else {
+			logger.info(nameOf(this, true) + " started. Type \"telnet " + getHostName() + ' ' + port
+					+ "\" to connect.");
+		}
+		if (httpPort > 0) {
+			String url = (tls ? "https://" : "http://") + getHostName() + ':' + httpPort;
+			logger.info("REPL commands can be executed by \"POST " + url + "/exec\" requests (or via WebSocket at "
+					+ url.replace("http", "ws") + "/ws).");
+		}
 	}
 
-	// --- COMMAND READER LOOP ---
+	// --- ACCEPTOR LOOP ---
 
 	@Override
 	public void run() {
-		SocketChannel channel = null;
-		SelectionKey key, newKey;
-		RemoteReader buffer;
+		SocketChannel channel;
 		Iterator<SelectionKey> keys;
+		SelectionKey key;
 		int n;
 		while (executor != null && !Thread.currentThread().isInterrupted()) {
 
-			// Waiting for sockets
+			// Waiting for connections
 			try {
 				if (null == selector) {
 					continue;
@@ -158,141 +365,114 @@ public class RemoteRepl extends LocalRepl {
 			} catch (Exception anyError) {
 				break;
 			}
-			if (n > 0) {
-				keys = selector.selectedKeys().iterator();
-				while (keys.hasNext()) {
-					key = keys.next();
-					if (key == null) {
-						continue;
-					}
-					if (key.isValid()) {
-						if (key.isAcceptable()) {
-							try {
-								if (null != serverChannel) {
-									channel = serverChannel.accept();
-								}
-							} catch (IOException cause) {
-								keys.remove();
-								continue;
-							}
-							if (channel != null) {
-								try {
-									int openedSessions;
-									synchronized (buffers) {
-										openedSessions = buffers.size();
-									}
-
-									// Check the number of connections
-									if (openedSessions >= maxSessions) {
-										throw new Exception("too much opened maxSessions");
-									}
-
-									// Set socket socketTimeout
-									Socket socket = channel.socket();
-									if (socketTimeout > 0) {
-										socket.setSoTimeout(socketTimeout);
-									}
-
-									// Registering connection
-									channel.configureBlocking(false);
-									newKey = channel.register(selector, 0);
-									buffer = new RemoteReader(this, channel, newKey, authenticated, echo, username,
-											password);
-									newKey.attach(buffer);
-									synchronized (buffers) {
-										buffers.addLast(buffer);
-									}
-
-									// Send telnet header
-									if (echo) {
-										buffer.addBytes(TELNET_HEADER, true);
-									}
-
-								} catch (IOException e3) {
-									try {
-										channel.close();
-									} catch (Exception ignored) {
-									}
-									keys.remove();
-									continue;
-								} catch (Exception e4) {
-									try {
-										String message = "Telnet connection refused: " + e4.getMessage();
-										try {
-											ByteBuffer msg = ByteBuffer
-													.wrap(message.getBytes(StandardCharsets.US_ASCII));
-											channel.write(msg);
-											Thread.sleep(1000);
-										} catch (Exception ignored) {
-										}
-
-										// Close channel
-										channel.close();
-									} catch (Exception ignored) {
-									}
-								}
-							}
-						} else {
-
-							// Read data
-							if (key.isReadable()) {
-								buffer = (RemoteReader) key.attachment();
-								if (buffer != null) {
-									buffer.readPacket();
-								}
-							} else {
-
-								// Write data
-								if (key.isWritable()) {
-									buffer = (RemoteReader) key.attachment();
-									if (buffer != null) {
-										buffer.writePacket();
-									}
-								}
-							}
-						}
-					}
-					keys.remove();
+			if (n == 0) {
+				continue;
+			}
+			keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				key = keys.next();
+				keys.remove();
+				if (key == null || !key.isValid() || !key.isAcceptable()) {
+					continue;
+				}
+				try {
+					channel = ((ServerSocketChannel) key.channel()).accept();
+				} catch (IOException cause) {
+					continue;
+				}
+				if (channel != null) {
+					accept(channel);
 				}
 			}
+		}
+	}
+
+	protected void accept(SocketChannel channel) {
+		try {
+
+			// Check the number of connections
+			if (openedSessions.incrementAndGet() > maxSessions) {
+				openedSessions.decrementAndGet();
+				throw new Exception("too much opened sessions");
+			}
 
-			// Switch to write mode
-			synchronized (writableKeys) {
-				if (!writableKeys.isEmpty()) {
-					keys = writableKeys.iterator();
-					while (keys.hasNext()) {
-						key = (SelectionKey) keys.next();
-						if (key != null && key.isValid()) {
-							key.interestOps(SelectionKey.OP_WRITE);
-						}
-					}
-					writableKeys.clear();
+			// Pass to the least loaded Reactor
+			Reactor reactor = reactors[0];
+			for (int i = 1; i < reactors.length; i++) {
+				if (reactors[i].getSessions() < reactor.getSessions()) {
+					reactor = reactors[i];
 				}
 			}
+			reactor.register(channel);
+
+		} catch (Exception cause) {
+			try {
+				String message = "Telnet connection refused: " + cause.getMessage();
+				try {
+					channel.write(ByteBuffer.wrap(message.getBytes(StandardCharsets.US_ASCII)));
+				} catch (Exception ignored) {
+				}
+
+				// Close channel
+				channel.close();
+			} catch (Exception ignored) {
+			}
 		}
 	}
 
-	protected void removeBuffer(RemoteReader buffer) {
-		synchronized (buffers) {
-			buffers.remove(buffer);
+	/**
+	 * Creates the reader / writer of a new session (invoked by the Reactor).
+	 */
+	protected RemoteReader createReader(Reactor reactor, SocketChannel channel, SelectionKey key)
+			throws IOException {
+		TlsChannel tlsChannel = null;
+		if (serverContext != null) {
+			tlsChannel = new TlsChannel(channel, serverContext.createSSLEngine(), tlsBufferPool);
+		}
+		RemoteReader reader;
+		if (httpPort > 0 && channel.socket().getLocalPort() == httpPort) {
+			reader = new HttpReader(this, reactor, channel, tlsChannel, key, authenticated, username, password);
+		} else {
+			reader = new RemoteReader(this, reactor, channel, tlsChannel, key, authenticated, echo, username,
+					password);
 		}
+		sessions.add(reader);
+		reader.start();
+		return reader;
 	}
 
-	protected void markAsWritable(SelectionKey key) {
-		synchronized (writableKeys) {
-			writableKeys.addLast(key);
-		}
-		if (null != selector) {
-			selector.wakeup();
+	protected void removeBuffer(RemoteReader buffer) {
+		if (sessions.remove(buffer)) {
+			buffer.reactor.sessions.decrementAndGet();
+			openedSessions.decrementAndGet();
 		}
 	}
 
-	// --- START TCP READER ---
+	/**
+	 * Returns the opened telnet sessions.
+	 *
+	 * @return array of sessions
+	 */
+	public RemoteReader[] getSessions() {
+		return sessions.toArray(new RemoteReader[0]);
+	}
+
+	/**
+	 * Closes a telnet session.
+	 *
+	 * @param session
+	 *            session to close
+	 */
+	public void closeSession(RemoteReader session) {
+		session.close();
+	}
+
+	// --- STOP TCP READER ---
 
 	@Override
 	protected void stopReading() {
 		super.stopReading();
-		
+
 		// Close server-channel
 		if (selector != null) {
 			try {
@@ -300,24 +480,39 @@ public class RemoteRepl extends LocalRepl {
 				if (null != serverChannel) {
 					serverChannel.close();
 				}
+				if (null != httpChannel) {
+					httpChannel.close();
+				}
 				selector.close();
 			} catch (Exception ignored) {
 			}
 			serverChannel = null;
+			httpChannel = null;
 			selector = null;
 		}
-		
-		// Clear buffers
-		synchronized (buffers) {
-			if (!buffers.isEmpty()) {
-				RemoteReader[] array = new RemoteReader[buffers.size()];
-				buffers.toArray(array);
-				for (int n = 0; n < array.length; n++) {
-					array[n].close();
-				}
+
+		// Stop running commands
+		if (commandExecutor != null) {
+			commandExecutor.shutdownNow();
+			commandExecutor = null;
+		}
+
+		// Close sessions
+		for (RemoteReader session : sessions.toArray(new RemoteReader[0])) {
+			session.close();
+		}
+
+		// Stop Reactors
+		if (reactors != null) {
+			for (Reactor reactor : reactors) {
+				reactor.close();
 			}
+			reactors = null;
+		}
+		if (reactorExecutor != null) {
+			reactorExecutor.shutdownNow();
+			reactorExecutor = null;
 		}
-		writableKeys.clear();
 	}
 
 	// --- GETTERS / SETTERS ---
@@ -378,4 +573,132 @@ public class RemoteRepl extends LocalRepl {
 		this.password = password;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getMaxPooledBuffers() {
+		return maxPooledBuffers;
+	}
+
+	public void setMaxPooledBuffers(int maxPooledBuffers) {
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	public int getHistorySize() {
+		return historySize;
+	}
+
+	public void setHistorySize(int historySize) {
+		this.historySize = historySize;
+	}
+
+	public long getCompletionRefresh() {
+		return completionRefresh;
+	}
+
+	public void setCompletionRefresh(long completionRefresh) {
+		this.completionRefresh = completionRefresh;
+	}
+
+	public int getHttpPort() {
+		return httpPort;
+	}
+
+	public void setHttpPort(int httpPort) {
+		this.httpPort = httpPort;
+	}
+
+	public String[] getAllowedOrigins() {
+		return allowedOrigins;
+	}
+
+	public void setAllowedOrigins(String[] allowedOrigins) {
+		this.allowedOrigins = allowedOrigins;
+	}
+
+	public boolean isTls() {
+		return tls;
+	}
+
+	public void setTls(boolean tls) {
+		this.tls = tls;
+	}
+
+	public String getKeyStore() {
+		return keyStore;
+	}
+
+	public void setKeyStore(String keyStore) {
+		this.keyStore = keyStore;
+	}
+
+	public String getKeyStorePassword() {
+		return keyStorePassword;
+	}
+
+	public void setKeyStorePassword(String keyStorePassword) {
+		this.keyStorePassword = keyStorePassword;
+	}
+
+	public String getKeyStoreType() {
+		return keyStoreType;
+	}
+
+	public void setKeyStoreType(String keyStoreType) {
+		this.keyStoreType = keyStoreType;
+	}
+
+	public int getTlsSessionCacheSize() {
+		return tlsSessionCacheSize;
+	}
+
+	public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+		this.tlsSessionCacheSize = tlsSessionCacheSize;
+	}
+
+	public int getTlsSessionTimeout() {
+		return tlsSessionTimeout;
+	}
+
+	public void setTlsSessionTimeout(int tlsSessionTimeout) {
+		this.tlsSessionTimeout = tlsSessionTimeout;
+	}
+
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	public void setSslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getReactorThreads() {
+		return reactorThreads;
+	}
+
+	public void setReactorThreads(int reactorThreads) {
+		this.reactorThreads = reactorThreads;
+	}
+
+	public long getOutputHighWaterMark() {
+		return outputHighWaterMark;
+	}
+
+	public void setOutputHighWaterMark(long outputHighWaterMark) {
+		this.outputHighWaterMark = outputHighWaterMark;
+	}
+
 }
\ No newline at end of file
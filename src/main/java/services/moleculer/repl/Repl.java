@@ -123,7 +123,7 @@ public abstract class Repl extends Service {
 	// --- COMMAND PROCESSOR ---
 
 	public abstract void onCommand(PrintWriter out, String command) throws Exception;
-	
+
 	// --- GETTERS / SETTERS ---
 
 	public void setEnabled(boolean enabled) {
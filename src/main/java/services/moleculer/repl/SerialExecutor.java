@@ -0,0 +1,110 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes the submitted tasks one after the other, in order of submission, on
+ * a shared (parent) Executor. The remote console uses one instance per telnet
+ * session, so the commands of a session keep their order, but the sessions do
+ * not block each other.
+ */
+public class SerialExecutor implements Executor {
+
+	// --- PARENT EXECUTOR ---
+
+	protected final Executor executor;
+
+	// --- QUEUED TASKS ---
+
+	protected final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	protected final AtomicBoolean running = new AtomicBoolean();
+
+	// --- CONSTRUCTOR ---
+
+	public SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	// --- EXECUTE TASK ---
+
+	@Override
+	public void execute(Runnable task) {
+		tasks.offer(task);
+		schedule();
+	}
+
+	protected void schedule() {
+		if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException rejected) {
+				running.set(false);
+				throw rejected;
+			}
+		}
+	}
+
+	protected void drain() {
+		try {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		} finally {
+			running.set(false);
+
+			// A task may have arrived after the last poll
+			schedule();
+		}
+	}
+
+	// --- STATUS ---
+
+	/**
+	 * Returns true if a task is running.
+	 *
+	 * @return true if busy
+	 */
+	public boolean isBusy() {
+		return running.get();
+	}
+
+	/**
+	 * Returns the number of tasks waiting for execution.
+	 *
+	 * @return number of queued tasks
+	 */
+	public int getQueued() {
+		return tasks.size();
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Output of a telnet command. The written bytes are sent to the client in
+ * chunks (at every flush or when the buffer is full) while the command is
+ * running. If the client reads slowly, the writer thread is blocked until the
+ * queued output of the session falls below the high-water mark. When the
+ * session is closed, the writes fail (PrintWriters report it by "checkError"),
+ * and the running command is interrupted.
+ */
+public class SessionOutputStream extends OutputStream {
+
+	// --- TARGET SESSION ---
+
+	protected final RemoteReader reader;
+
+	// --- BUFFER ---
+
+	protected final byte[] buffer;
+
+	protected int count;
+
+	// --- CONSTRUCTOR ---
+
+	public SessionOutputStream(RemoteReader reader, int bufferSize) {
+		this.reader = reader;
+		this.buffer = new byte[bufferSize];
+	}
+
+	// --- WRITE METHODS ---
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(bytes, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+	}
+
+	protected void flushBuffer() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		if (reader.closed.get()) {
+
+			// Sets the error flag of the PrintWriter (see "checkError")
+			count = 0;
+			throw new IOException("Telnet session closed!");
+		}
+		byte[] chunk = encode(buffer, count);
+		count = 0;
+		if (chunk != null) {
+			reader.awaitWritable();
+			reader.addBytes(chunk, false);
+		}
+	}
+
+	/**
+	 * Creates the chunk to send (subclasses may frame or filter the output).
+	 *
+	 * @param bytes
+	 *            buffer
+	 * @param len
+	 *            number of bytes in the buffer
+	 *
+	 * @return bytes to send (or null)
+	 */
+	protected byte[] encode(byte[] bytes, int len) {
+		return Arrays.copyOf(bytes, len);
+	}
+
+}
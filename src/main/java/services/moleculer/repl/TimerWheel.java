@@ -0,0 +1,139 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Hashed timer wheel for the idle timeouts of the telnet sessions. It is not
+ * thread-safe, it is used by the thread of a Reactor. Scheduling is O(1), and
+ * an advance only visits the slots of the elapsed ticks. The activity of a
+ * session only updates a timestamp; the expired timer is re-scheduled by the
+ * caller if the session was active meanwhile.
+ *
+ * @param <T>
+ *            type of the scheduled items
+ */
+public class TimerWheel<T> {
+
+	// --- PROPERTIES ---
+
+	protected final long tickMillis;
+
+	// --- SLOTS ---
+
+	protected ArrayList<ArrayList<Timeout<T>>> slots;
+
+	/**
+	 * Last processed tick.
+	 */
+	protected long currentTick;
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a timer wheel.
+	 *
+	 * @param tickMillis
+	 *            resolution of the timer, in milliseconds
+	 * @param slotCount
+	 *            number of slots (timeouts beyond slotCount * tickMillis
+	 *            wait for more revolutions)
+	 * @param now
+	 *            current time, in milliseconds
+	 */
+	public TimerWheel(long tickMillis, int slotCount, long now) {
+		this.tickMillis = tickMillis;
+		this.slots = new ArrayList<>(slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			slots.add(new ArrayList<>());
+		}
+		this.currentTick = now / tickMillis;
+	}
+
+	// --- SCHEDULE ---
+
+	public void schedule(T item, long deadline) {
+
+		// First tick at (or after) the deadline
+		long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+		slots.get((int) (tick % slots.size())).add(new Timeout<>(item, deadline));
+	}
+
+	// --- ADVANCE ---
+
+	/**
+	 * Processes the elapsed ticks.
+	 *
+	 * @param now
+	 *            current time, in milliseconds
+	 * @param expired
+	 *            invoked with the expired items (and with "now")
+	 */
+	public void advance(long now, BiConsumer<T, Long> expired) {
+		long targetTick = now / tickMillis;
+		if (targetTick <= currentTick) {
+			return;
+		}
+
+		// Visit each slot at most once
+		long firstTick = Math.max(currentTick + 1, targetTick - slots.size() + 1);
+		currentTick = targetTick;
+		for (long tick = firstTick; tick <= targetTick; tick++) {
+			int index = (int) (tick % slots.size());
+			ArrayList<Timeout<T>> slot = slots.get(index);
+			if (slot.isEmpty()) {
+				continue;
+			}
+			slots.set(index, new ArrayList<>());
+			for (Timeout<T> timeout : slot) {
+				if (timeout.deadline <= now) {
+					expired.accept(timeout.item, now);
+				} else {
+
+					// Next revolution
+					slots.get(index).add(timeout);
+				}
+			}
+		}
+	}
+
+	// --- SCHEDULED ITEM ---
+
+	protected static class Timeout<T> {
+
+		protected final T item;
+		protected final long deadline;
+
+		protected Timeout(T item, long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+
+	}
+
+}
@@ -0,0 +1,354 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+
+/**
+ * Non-blocking TLS layer of a remote console session. It is driven by the
+ * selector loop of the Reactor: "read" decrypts the received records (and
+ * performs the handshake steps), "write" encrypts the outgoing data. The
+ * network and application buffers are borrowed from a BufferPool for the
+ * lifetime of the session.
+ */
+public class TlsChannel {
+
+	// --- EMPTY BUFFERS ---
+
+	protected static final ByteBuffer[] NO_DATA = new ByteBuffer[0];
+
+	// --- CHANNEL AND ENGINE ---
+
+	protected final SocketChannel channel;
+	protected final SSLEngine engine;
+	protected final BufferPool pool;
+
+	// --- BUFFERS ---
+
+	/**
+	 * Received (encrypted) bytes, in write mode.
+	 */
+	protected ByteBuffer netIn;
+
+	/**
+	 * Encrypted bytes to send, in read mode.
+	 */
+	protected ByteBuffer netOut;
+
+	/**
+	 * Decrypted bytes, in read mode.
+	 */
+	protected ByteBuffer appIn;
+
+	/**
+	 * The last unwrap stopped because "appIn" was full (complete records may
+	 * be waiting in "netIn").
+	 */
+	protected boolean overflow;
+
+	protected boolean closed;
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a server-side TLS channel.
+	 *
+	 * @param channel
+	 *            connected channel
+	 * @param engine
+	 *            engine (created by the SSLContext of the console)
+	 * @param pool
+	 *            pool of buffers (with capacity for the TLS packets)
+	 *
+	 * @throws IOException
+	 *             if the handshake cannot be started
+	 */
+	public TlsChannel(SocketChannel channel, SSLEngine engine, BufferPool pool) throws IOException {
+		this.channel = channel;
+		this.engine = engine;
+		this.pool = pool;
+		engine.setUseClientMode(false);
+		engine.beginHandshake();
+		netIn = pool.acquire();
+		netOut = pool.acquire();
+		netOut.flip();
+		appIn = pool.acquire();
+		appIn.flip();
+	}
+
+	// --- READ ---
+
+	/**
+	 * Reads the available records and copies the decrypted bytes into the
+	 * buffer.
+	 *
+	 * @param dst
+	 *            target buffer
+	 *
+	 * @return number of bytes copied, or -1 at the end of stream
+	 *
+	 * @throws IOException
+	 *             any I/O or TLS exception
+	 */
+	public synchronized int read(ByteBuffer dst) throws IOException {
+		if (closed) {
+			return -1;
+		}
+		if (appIn.hasRemaining()) {
+			return transfer(dst);
+		}
+		boolean eof = channel.read(netIn) == -1;
+		netIn.flip();
+		overflow = false;
+		try {
+			while (true) {
+				HandshakeStatus status = engine.getHandshakeStatus();
+				if (status == HandshakeStatus.NEED_TASK) {
+					runTasks();
+					continue;
+				}
+				if (status == HandshakeStatus.NEED_WRAP) {
+					if (!wrap(NO_DATA, 0, 0)) {
+						break;
+					}
+					continue;
+				}
+				appIn.compact();
+				SSLEngineResult result;
+				try {
+					result = engine.unwrap(netIn, appIn);
+				} finally {
+					appIn.flip();
+				}
+				if (result.getStatus() == Status.CLOSED) {
+					eof = true;
+					break;
+				}
+				if (result.getStatus() != Status.OK) {
+
+					// Underflow (partial record) or overflow (unread data)
+					overflow = result.getStatus() == Status.BUFFER_OVERFLOW;
+					break;
+				}
+				if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+					break;
+				}
+			}
+		} finally {
+			netIn.compact();
+		}
+		if (appIn.hasRemaining()) {
+			return transfer(dst);
+		}
+		return eof ? -1 : 0;
+	}
+
+	protected int transfer(ByteBuffer dst) {
+		int n = Math.min(appIn.remaining(), dst.remaining());
+		ByteBuffer slice = appIn.duplicate();
+		slice.limit(slice.position() + n);
+		dst.put(slice);
+		appIn.position(appIn.position() + n);
+		return n;
+	}
+
+	/**
+	 * Returns true if decrypted bytes (or received records which did not fit
+	 * into the application buffer) are waiting for the next "read".
+	 *
+	 * @return true if there is buffered input
+	 */
+	public synchronized boolean hasBufferedInput() {
+		return !closed && (appIn.hasRemaining() || (overflow && netIn.position() > 0));
+	}
+
+	// --- WRITE ---
+
+	/**
+	 * Encrypts and sends the data of the buffers (as much as the socket
+	 * accepts).
+	 *
+	 * @param srcs
+	 *            buffers to send
+	 * @param offset
+	 *            first buffer
+	 * @param length
+	 *            number of buffers
+	 *
+	 * @return number of consumed (plain) bytes
+	 *
+	 * @throws IOException
+	 *             any I/O or TLS exception
+	 */
+	public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		if (!flush()) {
+			return 0;
+		}
+
+		// Continue the handshake
+		HandshakeStatus status = engine.getHandshakeStatus();
+		while (status == HandshakeStatus.NEED_TASK || status == HandshakeStatus.NEED_WRAP) {
+			if (status == HandshakeStatus.NEED_TASK) {
+				runTasks();
+			} else if (!wrap(NO_DATA, 0, 0)) {
+				return 0;
+			}
+			status = engine.getHandshakeStatus();
+		}
+		if (status != HandshakeStatus.NOT_HANDSHAKING) {
+
+			// Waiting for the client
+			return 0;
+		}
+
+		// Send data
+		long consumed = 0;
+		while (hasRemaining(srcs, offset, length)) {
+			long before = remaining(srcs, offset, length);
+			boolean sent = wrap(srcs, offset, length);
+			consumed += before - remaining(srcs, offset, length);
+			if (!sent) {
+				break;
+			}
+		}
+		return consumed;
+	}
+
+	/**
+	 * Returns true if encrypted bytes (or handshake messages) are waiting for
+	 * the next "write".
+	 *
+	 * @return true if the channel needs a write event
+	 */
+	public synchronized boolean hasPendingOutput() {
+		return !closed && (netOut.hasRemaining() || engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP);
+	}
+
+	/**
+	 * Returns true if the handshake is finished, and data can be sent.
+	 *
+	 * @return true if ready for writing data
+	 */
+	public synchronized boolean isReady() {
+		return !closed && engine.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING;
+	}
+
+	/**
+	 * Wraps one record and sends the pending bytes.
+	 *
+	 * @return true if all bytes have been sent
+	 */
+	protected boolean wrap(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		netOut.compact();
+		SSLEngineResult result;
+		try {
+			result = engine.wrap(srcs, offset, length, netOut);
+		} finally {
+			netOut.flip();
+		}
+		if (result.getStatus() == Status.CLOSED) {
+			throw new ClosedChannelException();
+		}
+		return flush() && result.getStatus() == Status.OK;
+	}
+
+	protected boolean flush() throws IOException {
+		while (netOut.hasRemaining()) {
+			if (channel.write(netOut) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void runTasks() {
+		Runnable task;
+		while ((task = engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	protected static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (srcs[i].hasRemaining()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected static long remaining(ByteBuffer[] srcs, int offset, int length) {
+		long remaining = 0;
+		for (int i = offset; i < offset + length; i++) {
+			remaining += srcs[i].remaining();
+		}
+		return remaining;
+	}
+
+	// --- CLOSE ---
+
+	/**
+	 * Sends "close_notify" (if the socket accepts it) and releases the
+	 * buffers. It does not close the socket channel.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		try {
+			engine.closeOutbound();
+			if (channel.isOpen()) {
+				wrap(NO_DATA, 0, 0);
+			}
+		} catch (Exception ignored) {
+		}
+		closed = true;
+		pool.release(netIn);
+		pool.release(netOut);
+		pool.release(appIn);
+		netIn = null;
+		netOut = null;
+		appIn = null;
+	}
+
+	// --- GETTERS ---
+
+	public SSLEngine getEngine() {
+		return engine;
+	}
+
+}
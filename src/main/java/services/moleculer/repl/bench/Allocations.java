@@ -0,0 +1,143 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocation of threads (if the JVM supports it).
+ */
+public final class Allocations {
+
+	// --- MX BEAN ---
+
+	private static final com.sun.management.ThreadMXBean threadBean;
+
+	static {
+		com.sun.management.ThreadMXBean bean = null;
+		try {
+			java.lang.management.ThreadMXBean standard = ManagementFactory.getThreadMXBean();
+			if (standard instanceof com.sun.management.ThreadMXBean) {
+				bean = (com.sun.management.ThreadMXBean) standard;
+				if (!bean.isThreadAllocatedMemorySupported()) {
+					bean = null;
+				}
+			}
+		} catch (Throwable unsupported) {
+			bean = null;
+		}
+		threadBean = bean;
+	}
+
+	// --- USAGE COUNTER ---
+
+	/**
+	 * Number of running benchmarks (guarded by the class lock).
+	 */
+	private static int users;
+
+	/**
+	 * The setting of the JVM before the first "enable" call.
+	 */
+	private static boolean previouslyEnabled;
+
+	private Allocations() {
+	}
+
+	// --- METHODS ---
+
+	public static final boolean isSupported() {
+		return threadBean != null;
+	}
+
+	/**
+	 * Enables the allocation counters of the threads for a benchmark. The
+	 * previous setting of the JVM is restored by the last "release" call.
+	 */
+	public static final synchronized void enable() {
+		if (threadBean == null) {
+			return;
+		}
+		try {
+			if (users++ == 0) {
+				previouslyEnabled = threadBean.isThreadAllocatedMemoryEnabled();
+				if (!previouslyEnabled) {
+					threadBean.setThreadAllocatedMemoryEnabled(true);
+				}
+			}
+		} catch (Throwable ignored) {
+
+			// Not permitted (eg. by a security manager)
+		}
+	}
+
+	/**
+	 * Releases the allocation counters (must be paired with "enable").
+	 */
+	public static final synchronized void release() {
+		if (threadBean == null || users == 0) {
+			return;
+		}
+		try {
+			if (--users == 0 && !previouslyEnabled) {
+				threadBean.setThreadAllocatedMemoryEnabled(false);
+			}
+		} catch (Throwable ignored) {
+
+			// Not permitted (eg. by a security manager)
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread.
+	 *
+	 * @return allocated bytes (or -1 if not supported or not enabled)
+	 */
+	public static final long currentThread() {
+		return threadBean == null ? -1 : threadBean.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Returns the number of bytes allocated by all live threads of the JVM
+	 * (not only by the threads of the broker). The allocations of the
+	 * terminated threads are not included.
+	 *
+	 * @return allocated bytes (or -1 if not supported or not enabled)
+	 */
+	public static final long allThreads() {
+		if (threadBean == null || !threadBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long sum = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+			if (bytes > 0) {
+				sum += bytes;
+			}
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import services.moleculer.repl.commands.Bench;
+import services.moleculer.service.Action;
+import services.moleculer.service.Name;
+import services.moleculer.service.Service;
+
+/**
+ * Load generator of the "bench --nodes ..." command. It runs the benchmark on
+ * this node on behalf of another node. The REPL does not install it; add it
+ * only to the nodes which may generate load for other nodes:<br>
+ * <br>
+ * broker.createService(new BenchService());
+ * <br>
+ * <br>
+ * The service accepts only the load and payload flags of the bench command
+ * (file flags are rejected, the workload must be sent inline), runs one
+ * benchmark at a time, and rejects benchmarks which exceed its limits
+ * ("maxTime", "maxConcurrency" and "maxRate").
+ */
+@Name(BenchService.SERVICE_NAME)
+public class BenchService extends Service {
+
+	// --- CONSTANTS ---
+
+	public static final String SERVICE_NAME = "$bench";
+
+	public static final String ACTION_NAME = SERVICE_NAME + ".run";
+
+	// --- LIMITS ---
+
+	/**
+	 * Maximum duration of a benchmark (with the warmup), in milliseconds.
+	 */
+	protected long maxTime = 10 * 60 * 1000;
+
+	/**
+	 * Maximum number of pending requests (or virtual threads).
+	 */
+	protected int maxConcurrency = 1000;
+
+	/**
+	 * Maximum request rate, in requests per second.
+	 */
+	protected long maxRate = 100000;
+
+	// --- RUNNING BENCHMARK ---
+
+	protected final AtomicBoolean running = new AtomicBoolean();
+
+	// --- BENCHMARK ACTION ---
+
+	/**
+	 * Runs a benchmark on behalf of a "bench --nodes ..." command. Returns the
+	 * results with the latency histograms in binary form.
+	 */
+	@Name("run")
+	public Action run = ctx -> {
+		if (!running.compareAndSet(false, true)) {
+			throw new IllegalStateException("Another benchmark is running on node \"" + broker.getNodeID() + "\"!");
+		}
+		return new Bench().runRemote(broker, ctx.params, maxTime, maxConcurrency, maxRate, () -> {
+			running.set(false);
+		});
+	};
+
+	// --- GETTERS / SETTERS ---
+
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	public long getMaxRate() {
+		return maxRate;
+	}
+
+	public void setMaxRate(long maxRate) {
+		this.maxRate = maxRate;
+	}
+
+}
@@ -0,0 +1,234 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.datatree.Tree;
+import services.moleculer.ServiceBroker;
+import services.moleculer.eventbus.Listener;
+import services.moleculer.eventbus.Subscribe;
+import services.moleculer.service.Action;
+import services.moleculer.service.Name;
+import services.moleculer.service.Service;
+
+/**
+ * Listener-side counter of the "bench-event" command. It counts the events
+ * sent by "bench-event" (with any event name) and measures their delivery
+ * latency. Install this service on the listener nodes:<br>
+ * <br>
+ * broker.createService(new EventCounter());
+ * <br>
+ * <br>
+ * The latency is measured between the clocks of the sender and the listener
+ * nodes, so the clocks of the nodes should be synchronized (eg. by NTP).
+ */
+@Name(EventCounter.SERVICE_NAME)
+public class EventCounter extends Service {
+
+	// --- CONSTANTS ---
+
+	public static final String SERVICE_NAME = "$eventCounter";
+
+	/**
+	 * Name of the property of the event payload with the id of the run, the
+	 * sequence number and the send time of the event.
+	 */
+	public static final String BENCH_PROPERTY = "$bench";
+
+	/**
+	 * Counters of abandoned runs are removed after this time (millis).
+	 */
+	protected static final long COUNTER_TIMEOUT = 10 * 60 * 1000L;
+
+	/**
+	 * Duplicates are detected among the last WINDOW_SIZE sequence numbers
+	 * (must be a multiple of 64).
+	 */
+	protected static final int WINDOW_SIZE = 64 * 1024;
+
+	// --- COUNTERS OF RUNS ---
+
+	protected final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+	// --- TIMERS ---
+
+	protected ScheduledFuture<?> cleanup;
+
+	// --- START / STOP ---
+
+	@Override
+	public void started(ServiceBroker broker) throws Exception {
+		super.started(broker);
+
+		// Remove the counters of the abandoned runs
+		long period = COUNTER_TIMEOUT / 10;
+		cleanup = broker.getConfig().getScheduler().scheduleWithFixedDelay(this::removeAbandonedCounters, period,
+				period, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void stopped() {
+		if (cleanup != null) {
+			cleanup.cancel(false);
+			cleanup = null;
+		}
+		counters.clear();
+	}
+
+	// --- LISTENER ---
+
+	@Subscribe("**")
+	public Listener counter = ctx -> {
+		Tree bench = ctx.params == null ? null : ctx.params.get(BENCH_PROPERTY);
+		if (bench == null) {
+			return;
+		}
+		long latency = (currentTimeMicros() - bench.get("time", 0L)) * 1000L;
+		String id = bench.get("id", "");
+		Counter counter = counters.computeIfAbsent(id, key -> new Counter());
+		counter.record(bench.get("seq", 0L), latency);
+	};
+
+	// --- RESULTS ---
+
+	/**
+	 * Returns (and removes) the results of a run.
+	 */
+	@Name("results")
+	public Action results = ctx -> {
+		Counter counter = counters.remove(ctx.params.get("id", ""));
+		Tree rsp = new Tree();
+		rsp.put("nodeID", broker.getNodeID());
+		if (counter == null) {
+			rsp.put("received", 0L);
+			rsp.put("duplicates", 0L);
+		} else {
+			rsp.put("received", counter.received.get());
+			rsp.put("duplicates", counter.duplicates.get());
+			rsp.put("histogram", Base64.getEncoder().encodeToString(counter.histogram.snapshot().toBytes()));
+		}
+		return rsp;
+	};
+
+	protected void removeAbandonedCounters() {
+		long limit = System.currentTimeMillis() - COUNTER_TIMEOUT;
+		Iterator<Counter> i = counters.values().iterator();
+		while (i.hasNext()) {
+			if (i.next().lastUpdated < limit) {
+				i.remove();
+			}
+		}
+	}
+
+	// --- WALL CLOCK ---
+
+	/**
+	 * Returns the current time in microseconds since the epoch.
+	 *
+	 * @return epoch time in microseconds
+	 */
+	public static final long currentTimeMicros() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1000000L + now.getNano() / 1000;
+	}
+
+	// --- COUNTER OF A RUN ---
+
+	protected static final class Counter {
+
+		protected final LatencyHistogram histogram = new LatencyHistogram();
+		protected final AtomicLong received = new AtomicLong();
+		protected final AtomicLong duplicates = new AtomicLong();
+
+		/**
+		 * Ring of flags of the last WINDOW_SIZE sequence numbers (guarded by
+		 * itself). Older events are counted without duplicate check.
+		 */
+		protected final long[] window = new long[WINDOW_SIZE / 64];
+
+		/**
+		 * Highest sequence number (guarded by "window").
+		 */
+		protected long highest = -1;
+
+		protected volatile long lastUpdated = System.currentTimeMillis();
+
+		protected void record(long seq, long latency) {
+			boolean duplicate = false;
+			if (seq >= 0) {
+				synchronized (window) {
+					duplicate = markSeen(seq);
+				}
+			}
+			if (duplicate) {
+				duplicates.incrementAndGet();
+				return;
+			}
+			histogram.record(Math.max(0, latency));
+			received.incrementAndGet();
+			lastUpdated = System.currentTimeMillis();
+		}
+
+		/**
+		 * Marks a sequence number as seen.
+		 *
+		 * @return true if it was seen before
+		 */
+		protected boolean markSeen(long seq) {
+			if (seq > highest) {
+
+				// Slide the window (clear the flags of the new numbers)
+				if (seq - highest >= WINDOW_SIZE) {
+					Arrays.fill(window, 0L);
+				} else {
+					for (long i = highest + 1; i <= seq; i++) {
+						window[(int) ((i >>> 6) % window.length)] &= ~(1L << i);
+					}
+				}
+				highest = seq;
+			} else if (highest - seq >= WINDOW_SIZE) {
+
+				// Out of the window
+				return false;
+			}
+			int index = (int) ((seq >>> 6) % window.length);
+			long mask = 1L << seq;
+			boolean seen = (window[index] & mask) != 0;
+			window[index] |= mask;
+			return seen;
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Snapshot of the garbage collector counters and the heap allocation of the
+ * JVM. The difference of two snapshots shows the GC pauses and allocations of
+ * a time interval.
+ */
+public class GcSnapshot {
+
+	// --- VARIABLES ---
+
+	protected final long timestamp;
+	protected final long count;
+	protected final long time;
+	protected final long allocated;
+
+	// --- CONSTRUCTOR ---
+
+	protected GcSnapshot(long timestamp, long count, long time, long allocated) {
+		this.timestamp = timestamp;
+		this.count = count;
+		this.time = time;
+		this.allocated = allocated;
+	}
+
+	/**
+	 * Reads the current values of the (stop-the-world) collectors and the
+	 * allocation counters of the threads.
+	 *
+	 * @return new snapshot
+	 */
+	public static GcSnapshot take() {
+		long count = 0;
+		long time = 0;
+		List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean bean : beans) {
+			if (isConcurrent(bean.getName())) {
+				continue;
+			}
+			count += Math.max(0, bean.getCollectionCount());
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return new GcSnapshot(System.nanoTime(), count, time, Allocations.allThreads());
+	}
+
+	/**
+	 * The "cycle" beans of the concurrent collectors (eg. "G1 Concurrent GC",
+	 * "ZGC Cycles") do not measure pauses.
+	 */
+	protected static boolean isConcurrent(String name) {
+		return name.contains("Concurrent") || name.contains("Cycles");
+	}
+
+	// --- INTERVAL ---
+
+	/**
+	 * Returns the GC pauses and allocations since the "previous" snapshot.
+	 *
+	 * @param previous
+	 *            an earlier snapshot
+	 *
+	 * @return snapshot of the interval
+	 */
+	public GcSnapshot minus(GcSnapshot previous) {
+		long bytes = allocated < 0 || previous.allocated < 0 ? -1 : Math.max(0, allocated - previous.allocated);
+		return new GcSnapshot(timestamp - previous.timestamp, count - previous.count, time - previous.time, bytes);
+	}
+
+	// --- GETTERS ---
+
+	/**
+	 * Returns the time of the snapshot (System.nanoTime), or the length of the
+	 * interval in nanoseconds.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the accumulated pause time in milliseconds.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the allocated bytes (or -1 if not supported).
+	 */
+	public long getAllocated() {
+		return allocated;
+	}
+
+}
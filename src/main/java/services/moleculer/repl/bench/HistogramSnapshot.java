@@ -0,0 +1,306 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import static services.moleculer.repl.bench.LatencyHistogram.LENGTH;
+import static services.moleculer.repl.bench.LatencyHistogram.highestValueAt;
+import static services.moleculer.repl.bench.LatencyHistogram.indexOf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Point-in-time (non-concurrent) copy of a {@link LatencyHistogram}.
+ */
+public class HistogramSnapshot {
+
+	// --- DATA ---
+
+	protected final long[] counts;
+	protected final long totalCount;
+	protected final long sum;
+	protected final long min;
+	protected final long max;
+
+	// --- CONSTRUCTOR ---
+
+	protected HistogramSnapshot(long[] counts, long sum, long min, long max) {
+		this.counts = counts;
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		this.totalCount = total;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+	}
+
+	// --- PERCENTILES ---
+
+	/**
+	 * Returns the (highest equivalent) value below which the given percentage
+	 * of the recorded values fall.
+	 *
+	 * @param percentile
+	 *            percentile (0...100)
+	 *
+	 * @return latency in nanoseconds (or 0 if the histogram is empty)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long limit = (long) Math.ceil(Math.min(percentile, 100d) / 100d * totalCount);
+		if (limit < 1) {
+			limit = 1;
+		}
+		long cumulated = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulated += counts[i];
+			if (cumulated >= limit) {
+				return Math.max(min, Math.min(max, highestValueAt(i)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of recorded values between "from" (inclusive) and "to"
+	 * (exclusive). Both limits are rounded to bucket boundaries.
+	 *
+	 * @param from
+	 *            lower limit in nanoseconds
+	 * @param to
+	 *            upper limit in nanoseconds
+	 *
+	 * @return number of values
+	 */
+	public long getCountBetween(long from, long to) {
+		int first = indexOf(Math.max(0, Math.min(from, LatencyHistogram.MAX_VALUE)));
+		int last = to > LatencyHistogram.MAX_VALUE ? LENGTH : indexOf(Math.max(0, to));
+		long count = 0;
+		for (int i = first; i < last; i++) {
+			count += counts[i];
+		}
+		return count;
+	}
+
+	// --- INTERVAL STATISTICS ---
+
+	/**
+	 * Returns the values recorded since the "previous" snapshot of the same
+	 * histogram. The minimum and maximum of the interval are rounded to bucket
+	 * boundaries.
+	 *
+	 * @param previous
+	 *            an earlier snapshot (or null)
+	 *
+	 * @return snapshot of the interval
+	 */
+	public HistogramSnapshot minus(HistogramSnapshot previous) {
+		if (previous == null) {
+			return this;
+		}
+		long[] diff = new long[counts.length];
+		int first = -1;
+		int last = -1;
+		for (int i = 0; i < counts.length; i++) {
+			diff[i] = Math.max(0, counts[i] - previous.counts[i]);
+			if (diff[i] > 0) {
+				if (first == -1) {
+					first = i;
+				}
+				last = i;
+			}
+		}
+		if (first == -1) {
+			return new HistogramSnapshot(diff, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+		}
+		long intervalMin = Math.max(min, LatencyHistogram.lowestValueAt(first));
+		long intervalMax = Math.min(max, highestValueAt(last));
+		return new HistogramSnapshot(diff, sum - previous.sum, intervalMin, intervalMax);
+	}
+
+	// --- MERGE ---
+
+	/**
+	 * Merges the values of two histograms (eg. the histograms of two load
+	 * generator nodes).
+	 *
+	 * @param other
+	 *            another snapshot (or null)
+	 *
+	 * @return merged snapshot
+	 */
+	public HistogramSnapshot add(HistogramSnapshot other) {
+		if (other == null) {
+			return this;
+		}
+		long[] merged = new long[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			merged[i] = counts[i] + other.counts[i];
+		}
+		return new HistogramSnapshot(merged, sum + other.sum, Math.min(min, other.min), Math.max(max, other.max));
+	}
+
+	// --- BINARY FORM ---
+
+	protected static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Serializes the non-empty buckets of this snapshot.
+	 *
+	 * @return binary form of the snapshot
+	 */
+	public byte[] toBytes() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(FORMAT_VERSION);
+			out.writeInt(counts.length);
+			out.writeLong(sum);
+			out.writeLong(min);
+			out.writeLong(max);
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] != 0) {
+					out.writeInt(i);
+					out.writeLong(counts[i]);
+				}
+			}
+			out.writeInt(-1);
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException cause) {
+
+			// Never happens
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Deserializes a snapshot created by {@link #toBytes()}.
+	 *
+	 * @param bytes
+	 *            binary form of the snapshot
+	 *
+	 * @return snapshot
+	 *
+	 * @throws IOException
+	 *             invalid or incompatible format
+	 */
+	public static HistogramSnapshot fromBytes(byte[] bytes) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int version = in.readByte();
+		int length = in.readInt();
+		if (version != FORMAT_VERSION || length != LENGTH) {
+			throw new IOException("Incompatible histogram format (version " + version + ", length " + length + ")!");
+		}
+		long sum = in.readLong();
+		long min = in.readLong();
+		long max = in.readLong();
+		long[] counts = new long[LENGTH];
+		int index;
+		while ((index = in.readInt()) != -1) {
+			if (index < 0 || index >= LENGTH) {
+				throw new IOException("Invalid histogram bucket (" + index + ")!");
+			}
+			counts[index] = in.readLong();
+		}
+		return new HistogramSnapshot(counts, sum, min, max);
+	}
+
+	// --- COMPARISON ---
+
+	/**
+	 * Mann-Whitney U (rank-sum) test of two snapshots. Values of the same
+	 * bucket are handled as ties.
+	 *
+	 * @param other
+	 *            the other snapshot (eg. baseline)
+	 *
+	 * @return z-score of the test (positive if the values of this snapshot
+	 *         tend to be larger); |z| &gt; 1.96 means a significant difference
+	 *         at the 5% level
+	 */
+	public double rankSumZ(HistogramSnapshot other) {
+		if (counts.length != other.counts.length) {
+			throw new IllegalArgumentException("Incompatible histograms!");
+		}
+		double n1 = totalCount;
+		double n2 = other.totalCount;
+		if (n1 == 0 || n2 == 0) {
+			return 0;
+		}
+		double u = 0;
+		double below = 0;
+		double ties = 0;
+		double a, b, t;
+		for (int i = 0; i < counts.length; i++) {
+			a = counts[i];
+			b = other.counts[i];
+			if (a == 0 && b == 0) {
+				continue;
+			}
+			u += a * (below + b / 2);
+			below += b;
+			t = a + b;
+			ties += t * t * t - t;
+		}
+		double n = n1 + n2;
+		double variance = n1 * n2 / 12 * ((n + 1) - ties / (n * (n - 1)));
+		if (variance <= 0) {
+			return 0;
+		}
+		return (u - n1 * n2 / 2) / Math.sqrt(variance);
+	}
+
+	// --- GETTERS ---
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	public long getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return totalCount == 0 ? 0 : max;
+	}
+
+}
@@ -0,0 +1,270 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Starts low-overhead JFR recordings (based on the "default" JFR
+ * configuration) and summarizes the recorded hot methods, allocation sites and
+ * lock contention.
+ */
+public final class JfrProfiler {
+
+	// --- EVENT TYPES ---
+
+	protected static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+	protected static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+	protected static final String MONITOR_ENTER = "jdk.JavaMonitorEnter";
+
+	private JfrProfiler() {
+	}
+
+	// --- AVAILABILITY ---
+
+	private static final boolean AVAILABLE = isModulePresent();
+
+	private static final boolean isModulePresent() {
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			return true;
+		} catch (Throwable notFound) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the "jdk.jfr" module (it is missing from some minimal JREs).
+	 *
+	 * @return true if the JFR API is available
+	 */
+	public static final boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	// --- RECORDING ---
+
+	/**
+	 * Starts a new recording.
+	 *
+	 * @param name
+	 *            name of the recording
+	 *
+	 * @return the running recording
+	 *
+	 * @throws IOException
+	 *             if the configuration cannot be read
+	 * @throws ParseException
+	 *             if the configuration cannot be parsed
+	 */
+	public static final Recording start(String name) throws IOException, ParseException {
+		Recording recording = new Recording(Configuration.getConfiguration("default"));
+		recording.setName(name);
+		recording.enable(EXECUTION_SAMPLE).withPeriod(Duration.ofMillis(10));
+		recording.enable(ALLOCATION_SAMPLE).with("throttle", "150/s");
+		recording.enable(MONITOR_ENTER).withThreshold(Duration.ofMillis(1));
+		recording.start();
+		return recording;
+	}
+
+	/**
+	 * Stops the recording and writes it into a file.
+	 *
+	 * @param recording
+	 *            the running recording
+	 * @param file
+	 *            target file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static final void stop(Recording recording, Path file) throws IOException {
+		try {
+			recording.stop();
+			recording.dump(file);
+		} finally {
+			recording.close();
+		}
+	}
+
+	// --- SUMMARY ---
+
+	/**
+	 * Reads a recording and aggregates the events by their top stack frame.
+	 *
+	 * @param file
+	 *            JFR file
+	 *
+	 * @return summary of the recording
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static final Summary summarize(Path file) throws IOException {
+		Summary summary = new Summary();
+		try (RecordingFile recordingFile = new RecordingFile(file)) {
+			while (recordingFile.hasMoreEvents()) {
+				RecordedEvent event = recordingFile.readEvent();
+				String type = event.getEventType().getName();
+				RecordedStackTrace stackTrace = event.getStackTrace();
+				if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+					continue;
+				}
+				RecordedFrame frame = stackTrace.getFrames().get(0);
+				switch (type) {
+				case EXECUTION_SAMPLE:
+					summary.executionSamples++;
+					add(summary.methods, nameOf(frame, false), 0);
+					break;
+				case ALLOCATION_SAMPLE:
+					RecordedClass objectClass = event.getClass("objectClass");
+					String site = nameOf(frame, true);
+					if (objectClass != null) {
+						site += " (" + objectClass.getName() + ")";
+					}
+					add(summary.allocations, site, event.getLong("weight"));
+					break;
+				case MONITOR_ENTER:
+					RecordedClass monitorClass = event.getClass("monitorClass");
+					String lock = nameOf(frame, true);
+					if (monitorClass != null) {
+						lock += " (" + monitorClass.getName() + ")";
+					}
+					add(summary.locks, lock, event.getDuration().toNanos());
+					break;
+				default:
+				}
+			}
+		}
+		return summary;
+	}
+
+	protected static final void add(HashMap<String, Entry> map, String name, long value) {
+		Entry entry = map.get(name);
+		if (entry == null) {
+			entry = new Entry(name);
+			map.put(name, entry);
+		}
+		entry.count++;
+		entry.total += value;
+	}
+
+	protected static final String nameOf(RecordedFrame frame, boolean line) {
+		RecordedMethod method = frame.getMethod();
+		if (method == null) {
+			return "unknown";
+		}
+		String name = method.getType().getName() + '.' + method.getName();
+		if (line && frame.getLineNumber() > 0) {
+			name += ":" + frame.getLineNumber();
+		}
+		return name;
+	}
+
+	// --- SUMMARY OF A RECORDING ---
+
+	public static final class Summary {
+
+		protected long executionSamples;
+
+		protected final HashMap<String, Entry> methods = new HashMap<>();
+		protected final HashMap<String, Entry> allocations = new HashMap<>();
+		protected final HashMap<String, Entry> locks = new HashMap<>();
+
+		public long getExecutionSamples() {
+			return executionSamples;
+		}
+
+		/**
+		 * Hot methods, by the number of execution samples.
+		 */
+		public List<Entry> getHotMethods(int top) {
+			return top(methods, top, false);
+		}
+
+		/**
+		 * Allocation sites, by the sampled weight (bytes).
+		 */
+		public List<Entry> getAllocationSites(int top) {
+			return top(allocations, top, true);
+		}
+
+		/**
+		 * Contended locks, by the total blocking time (nanoseconds).
+		 */
+		public List<Entry> getLockContention(int top) {
+			return top(locks, top, true);
+		}
+
+		protected List<Entry> top(HashMap<String, Entry> map, int top, boolean byTotal) {
+			ArrayList<Entry> list = new ArrayList<>(map.values());
+			Collections.sort(list, (a, b) -> byTotal ? Long.compare(b.total, a.total) : Long.compare(b.count, a.count));
+			return list.size() > top ? list.subList(0, top) : list;
+		}
+
+	}
+
+	public static final class Entry {
+
+		protected final String name;
+		protected long count;
+		protected long total;
+
+		protected Entry(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+	}
+
+}
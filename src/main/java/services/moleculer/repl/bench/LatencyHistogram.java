@@ -0,0 +1,166 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed-memory, log-linear latency histogram (HdrHistogram-style
+ * bucketing). Values are nanoseconds. Every power-of-two range is divided into
+ * 128 linear sub-buckets, so the relative error of any reported value is less
+ * than 1%. The counters are striped by thread, so concurrent recorders rarely
+ * touch the same cache lines and never retry on a shared CAS.
+ */
+public class LatencyHistogram {
+
+	// --- CONSTANTS ---
+
+	protected static final int SUB_BUCKET_BITS = 8;
+	protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	protected static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+	/**
+	 * Highest trackable value (~73 minutes). Larger values are clamped.
+	 */
+	public static final long MAX_VALUE = (1L << 42) - 1;
+
+	/**
+	 * Number of counters per stripe.
+	 */
+	public static final int LENGTH = indexOf(MAX_VALUE) + 1;
+
+	// --- STRIPES ---
+
+	protected final Stripe[] stripes;
+	protected final int mask;
+
+	// --- CONSTRUCTORS ---
+
+	public LatencyHistogram() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public LatencyHistogram(int concurrency) {
+		int size = 1;
+		while (size < concurrency && size < 64) {
+			size <<= 1;
+		}
+		stripes = new Stripe[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe();
+		}
+		mask = size - 1;
+	}
+
+	// --- RECORD VALUE ---
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		} else if (nanos > MAX_VALUE) {
+			nanos = MAX_VALUE;
+		}
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+		stripe.counts.incrementAndGet(indexOf(nanos));
+		stripe.sum.addAndGet(nanos);
+
+		// Uncontended in practice (one stripe per thread)
+		long current = stripe.min.get();
+		while (nanos < current && !stripe.min.compareAndSet(current, nanos)) {
+			current = stripe.min.get();
+		}
+		current = stripe.max.get();
+		while (nanos > current && !stripe.max.compareAndSet(current, nanos)) {
+			current = stripe.max.get();
+		}
+	}
+
+	// --- CREATE SNAPSHOT ---
+
+	/**
+	 * Merges the stripes into a point-in-time copy. Concurrent recording is
+	 * allowed, values recorded during the copy may or may not be included.
+	 *
+	 * @return snapshot of the current state
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] counts = new long[LENGTH];
+		long sum = 0;
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (Stripe stripe : stripes) {
+			for (int i = 0; i < LENGTH; i++) {
+				counts[i] += stripe.counts.get(i);
+			}
+			sum += stripe.sum.get();
+			min = Math.min(min, stripe.min.get());
+			max = Math.max(max, stripe.max.get());
+		}
+		return new HistogramSnapshot(counts, sum, min, max);
+	}
+
+	// --- BUCKET CALCULATIONS ---
+
+	public static final int indexOf(long value) {
+		int bucket = (63 - Long.numberOfLeadingZeros(value | 1)) - (SUB_BUCKET_BITS - 1);
+		if (bucket <= 0) {
+			return (int) value;
+		}
+		int sub = (int) (value >>> bucket);
+		return SUB_BUCKET_COUNT + (bucket - 1) * SUB_BUCKET_HALF + (sub - SUB_BUCKET_HALF);
+	}
+
+	public static final long lowestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+		long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+		return sub << bucket;
+	}
+
+	public static final long highestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+		return lowestValueAt(index) + (1L << bucket) - 1;
+	}
+
+	// --- STRIPE OF COUNTERS ---
+
+	protected static final class Stripe {
+
+		protected final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+
+		protected final AtomicLong sum = new AtomicLong();
+		protected final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		protected final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	}
+
+}
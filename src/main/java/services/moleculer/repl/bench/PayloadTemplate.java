@@ -0,0 +1,283 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.util.LinkedList;
+
+import io.datatree.Tree;
+import services.moleculer.repl.Command;
+import services.moleculer.util.CheckedTree;
+
+/**
+ * Pre-parsed request template with generated values. String values of the
+ * template may contain one placeholder:
+ * <ul>
+ * <li>${seq} or ${seq:start} - sequence number of the request
+ * <li>${int:min:max} - random integer between "min" and "max" (inclusive)
+ * <li>${string:length} - random alphanumeric String
+ * <li>${pick:a|b|c} - random element of the list
+ * <li>${bytes:size} - random byte array
+ * </ul>
+ * Sample:<br>
+ * <br>
+ * {"id":"${seq}","name":"user-${string:8}","role":"${pick:admin|user}"}<br>
+ * <br>
+ * The template is parsed only once. The random values are derived from the
+ * seed, the sequence number and the position of the placeholder, so the
+ * generation is lock-free and a run can be reproduced with the same seed.
+ */
+public class PayloadTemplate {
+
+	// --- CONSTANTS ---
+
+	protected static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"
+			.toCharArray();
+
+	// --- TEMPLATE AND SLOTS ---
+
+	protected final Tree template;
+	protected final Slot[] slots;
+	protected final long seed;
+
+	// --- CONSTRUCTOR ---
+
+	protected PayloadTemplate(Tree template, Slot[] slots, long seed) {
+		this.template = template;
+		this.slots = slots;
+		this.seed = seed;
+	}
+
+	// --- PARSER ---
+
+	/**
+	 * Finds the placeholders of the template.
+	 *
+	 * @param template
+	 *            request parameters
+	 * @param seed
+	 *            seed of the random values
+	 *
+	 * @return parsed template, or null if there is no placeholder in the
+	 *         template
+	 */
+	public static PayloadTemplate parse(Tree template, long seed) {
+		if (template == null) {
+			return null;
+		}
+		LinkedList<Slot> list = new LinkedList<>();
+		if (template.isPrimitive()) {
+			Slot slot = parseSlot(null, template, 0);
+			if (slot != null) {
+				list.add(slot);
+			}
+		} else {
+			collectSlots(template, list);
+		}
+		if (list.isEmpty()) {
+			return null;
+		}
+		Slot[] slots = new Slot[list.size()];
+		list.toArray(slots);
+		return new PayloadTemplate(template, slots, seed);
+	}
+
+	protected static void collectSlots(Tree node, LinkedList<Slot> list) {
+		for (Tree child : node) {
+			if (child.isPrimitive()) {
+				Slot slot = parseSlot(child.getPath(), child, list.size());
+				if (slot != null) {
+					list.addLast(slot);
+				}
+			} else {
+				collectSlots(child, list);
+			}
+		}
+	}
+
+	protected static Slot parseSlot(String path, Tree node, int index) {
+		if (node.getType() != String.class) {
+			return null;
+		}
+		String value = node.asString();
+		int start = value.indexOf("${");
+		int end = start < 0 ? -1 : value.indexOf('}', start);
+		if (end < 0) {
+			return null;
+		}
+		String[] tokens = value.substring(start + 2, end).split(":", 2);
+		String type = tokens[0].trim().toLowerCase();
+		String args = tokens.length > 1 ? tokens[1].trim() : "";
+		Slot slot = new Slot(path, index, value.substring(0, start), value.substring(end + 1));
+		switch (type) {
+		case "seq":
+			slot.type = Slot.SEQ;
+			slot.min = args.isEmpty() ? 0 : Long.parseLong(args);
+			break;
+		case "int":
+			slot.type = Slot.INT;
+			String[] range = args.split(":");
+			slot.min = range.length > 1 ? Long.parseLong(range[0].trim()) : 0;
+			slot.max = Long.parseLong(range[range.length - 1].trim());
+			if (slot.max < slot.min) {
+				throw new IllegalArgumentException("Invalid range: " + value);
+			}
+			break;
+		case "string":
+			slot.type = Slot.STRING;
+			slot.max = args.isEmpty() ? 16 : Integer.parseInt(args);
+			break;
+		case "pick":
+			slot.type = Slot.PICK;
+			String[] items = args.split("\\|");
+			slot.values = new Object[items.length];
+			for (int i = 0; i < items.length; i++) {
+				slot.values[i] = toValue(items[i].trim());
+			}
+			break;
+		case "bytes":
+			slot.type = Slot.BYTES;
+			slot.max = args.isEmpty() ? 1024 : (int) Math.min(Integer.MAX_VALUE, Command.parseSize(args));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown placeholder: " + value);
+		}
+		return slot;
+	}
+
+	protected static Object toValue(String value) {
+		try {
+			if (value.contains(".")) {
+				return Double.parseDouble(value);
+			}
+			return Long.parseLong(value);
+		} catch (Exception notNumeric) {
+			if ("true".equals(value) || "false".equals(value)) {
+				return Boolean.parseBoolean(value);
+			}
+			return value;
+		}
+	}
+
+	// --- GENERATOR ---
+
+	/**
+	 * Creates the parameters of the specified request.
+	 *
+	 * @param seq
+	 *            sequence number of the request
+	 *
+	 * @return new parameter Tree
+	 */
+	public Tree generate(long seq) {
+		if (template.isPrimitive()) {
+			Tree params = new CheckedTree(slots[0].next(seed, seq));
+			params.getMeta().copyFrom(template.getMeta());
+			return params;
+		}
+		Tree params = template.clone();
+		for (Slot slot : slots) {
+			params.putObject(slot.path, slot.next(seed, seq));
+		}
+		return params;
+	}
+
+	// --- RANDOM NUMBERS (SPLITMIX64) ---
+
+	protected static final long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// --- PLACEHOLDER ---
+
+	protected static final class Slot {
+
+		protected static final int SEQ = 0;
+		protected static final int INT = 1;
+		protected static final int STRING = 2;
+		protected static final int PICK = 3;
+		protected static final int BYTES = 4;
+
+		protected final String path;
+		protected final long salt;
+		protected final String prefix;
+		protected final String suffix;
+
+		protected int type;
+		protected long min;
+		protected long max;
+		protected Object[] values;
+
+		protected Slot(String path, int index, String prefix, String suffix) {
+			this.path = path;
+			this.salt = mix(index + 1) * 0x9E3779B97F4A7C15L;
+			this.prefix = prefix;
+			this.suffix = suffix;
+		}
+
+		protected Object next(long seed, long seq) {
+			long random = mix(seed ^ salt ^ mix(seq));
+			Object value;
+			switch (type) {
+			case SEQ:
+				value = min + seq;
+				break;
+			case INT:
+				value = min + Long.remainderUnsigned(random, max - min + 1);
+				break;
+			case STRING:
+				char[] chars = new char[(int) max];
+				for (int i = 0; i < chars.length; i++) {
+					if (i % 10 == 0 && i > 0) {
+						random = mix(random);
+					}
+					chars[i] = ALPHABET[(int) Long.remainderUnsigned(random >>> (i % 10) * 6, ALPHABET.length)];
+				}
+				value = new String(chars);
+				break;
+			case PICK:
+				value = values[(int) Long.remainderUnsigned(random, values.length)];
+				break;
+			default:
+				byte[] bytes = new byte[(int) max];
+				for (int i = 0; i < bytes.length; i++) {
+					if (i % 8 == 0 && i > 0) {
+						random = mix(random);
+					}
+					bytes[i] = (byte) (random >>> (i % 8) * 8);
+				}
+				return bytes;
+			}
+			if (prefix.isEmpty() && suffix.isEmpty()) {
+				return value;
+			}
+			return prefix + value + suffix;
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.util.Base64;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import services.moleculer.service.Action;
+import services.moleculer.service.Name;
+import services.moleculer.service.Service;
+import services.moleculer.stream.PacketStream;
+
+/**
+ * Receiver of the "bench-stream" command. It consumes the incoming stream and
+ * measures the latency of every chunk (the first 8 bytes of the chunks
+ * contain the send time). Install this service on the receiver nodes:<br>
+ * <br>
+ * broker.createService(new StreamSink());
+ * <br>
+ * <br>
+ * The latency is measured between the clocks of the sender and the receiver
+ * nodes, so the clocks of the nodes should be synchronized (eg. by NTP).
+ */
+@Name(StreamSink.SERVICE_NAME)
+public class StreamSink extends Service {
+
+	// --- CONSTANTS ---
+
+	public static final String SERVICE_NAME = "$streamSink";
+
+	public static final String ACTION_NAME = SERVICE_NAME + ".receive";
+
+	// --- RECEIVER ACTION ---
+
+	/**
+	 * Consumes the stream, then returns the number of bytes and chunks, the
+	 * arrival time of the first and last bytes and the chunk latencies.
+	 */
+	@Name("receive")
+	public Action receive = ctx -> {
+		PacketStream stream = ctx.stream;
+		if (stream == null) {
+			throw new IllegalArgumentException("Missing stream!");
+		}
+		return new Promise(r -> {
+			LatencyHistogram histogram = new LatencyHistogram(1);
+			long[] counters = new long[4];
+			stream.onPacket((bytes, cause, close) -> {
+				if (bytes != null && bytes.length > 0) {
+					long now = EventCounter.currentTimeMicros();
+					if (counters[1] == 0) {
+						counters[2] = now;
+					}
+					counters[3] = now;
+					counters[0] += bytes.length;
+					counters[1]++;
+					if (bytes.length >= 8) {
+						histogram.record(Math.max(0, (now - readLong(bytes)) * 1000L));
+					}
+				}
+				if (cause != null) {
+					r.reject(cause);
+				} else if (close) {
+					Tree rsp = new Tree();
+					rsp.put("bytes", counters[0]);
+					rsp.put("chunks", counters[1]);
+					rsp.put("firstByte", counters[2]);
+					rsp.put("lastByte", counters[3]);
+					rsp.put("histogram", Base64.getEncoder().encodeToString(histogram.snapshot().toBytes()));
+					r.resolve(rsp);
+				}
+			});
+		});
+	};
+
+	// --- CHUNK HEADER ---
+
+	/**
+	 * Writes the send time (epoch microseconds) into the first 8 bytes of the
+	 * chunk.
+	 *
+	 * @param chunk
+	 *            chunk (min. 8 bytes)
+	 * @param micros
+	 *            epoch time in microseconds
+	 */
+	public static final void writeLong(byte[] chunk, long micros) {
+		for (int i = 7; i >= 0; i--) {
+			chunk[i] = (byte) micros;
+			micros >>>= 8;
+		}
+	}
+
+	public static final long readLong(byte[] chunk) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (chunk[i] & 0xFF);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual threads (if the JVM supports them). The project is compiled
+ * for Java 17, so the Java 21 API is invoked by reflection.
+ */
+public final class VirtualThreads {
+
+	// --- FACTORY METHOD ---
+
+	private static final Method newExecutor;
+
+	static {
+		Method method = null;
+		try {
+			method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (Throwable unsupported) {
+			method = null;
+		}
+		newExecutor = method;
+	}
+
+	private VirtualThreads() {
+	}
+
+	// --- METHODS ---
+
+	public static final boolean isSupported() {
+		return newExecutor != null;
+	}
+
+	/**
+	 * Creates an Executor that starts a new virtual thread for each task.
+	 *
+	 * @return new ExecutorService
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the JVM does not support virtual threads
+	 */
+	public static final ExecutorService newExecutor() {
+		if (newExecutor == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!");
+		}
+		try {
+			return (ExecutorService) newExecutor.invoke(null);
+		} catch (Exception cause) {
+			throw new UnsupportedOperationException("Unable to create virtual threads!", cause);
+		}
+	}
+
+}
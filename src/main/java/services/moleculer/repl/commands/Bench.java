@@ -32,38 +32,88 @@ import static services.moleculer.repl.ColorWriter.YELLOW;
 import static services.moleculer.util.CommonUtils.formatNamoSec;
 import static services.moleculer.util.CommonUtils.formatNumber;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import io.datatree.Promise;
 import io.datatree.Tree;
+import jdk.jfr.Recording;
 import services.moleculer.ServiceBroker;
 import services.moleculer.context.CallOptions;
+import services.moleculer.error.MoleculerError;
 import services.moleculer.error.ServiceNotAvailableError;
 import services.moleculer.error.ServiceNotFoundError;
 import services.moleculer.repl.Command;
+import services.moleculer.repl.TextTable;
+import services.moleculer.repl.bench.Allocations;
+import services.moleculer.repl.bench.BenchRequestEvent;
+import services.moleculer.repl.bench.BenchService;
+import services.moleculer.repl.bench.GcSnapshot;
+import services.moleculer.repl.bench.HistogramSnapshot;
+import services.moleculer.repl.bench.JfrProfiler;
+import services.moleculer.repl.bench.LatencyHistogram;
+import services.moleculer.repl.bench.PayloadTemplate;
+import services.moleculer.repl.bench.VirtualThreads;
 import services.moleculer.service.Name;
+import services.moleculer.util.CommonUtils;
 
 /**
- * Measures the response time of a service.
+ * Measures the response time of a service. Response times are recorded into a
+ * log-linear histogram, the report contains the main latency percentiles and
+ * the distribution of the response times.
  */
 @Name("bench")
 public class Bench extends Command {
 
 	public Bench() {
 		option("num <number>", "number of iterates");
-		option("time <seconds>", "time of bench");
+		option("time <time>", "time of bench (eg. 10, 30s, 5m)");
 		option("nodeID <nodeID>", "nodeID (direct call)");
 		option("max <number>", "max number of pending requests");
-		option("retry <number>", "max number of retries (default is 0)");		
+		option("retry <number>", "max number of retries (default is 0)");
+		option("rate <number>", "constant request rate (requests / second)");
+		option("interval <time>", "print interval statistics (eg. 1s, 500ms)");
+		option("workload <filename>", "weighted action mix from a JSON/YAML file");
+		option("seed <number>", "seed of the generated ${...} parameter values");
+		option("nodes <nodeIDs>", "run the benchmark from the listed nodes (with BenchService)");
+		option("find-max", "find the highest load that meets the SLO");
+		option("slo <pNN<time>", "latency objective of --find-max (eg. p99<50ms)");
+		option("step-time <time>", "measurement window of --find-max steps");
+		option("step-warmup <time>", "warmup before each --find-max step");
+		option("warmup <time|count>", "warm up until steady state (eg. 30s or 5000)");
+		option("virtual-threads", "blocking calls from virtual threads (Java 21+)");
+		option("out <filename>", "save the results into a JSON file");
+		option("csv <filename>", "append the results to a CSV file");
+		option("histlog <filename>", "append the interval histograms to a log file");
+		option("compare <filename>", "compare the results with a saved JSON file");
+		option("jfr <filename>", "record a JFR profile of the benchmark");
 	}
 
 	@Override
@@ -73,7 +123,7 @@ public class Bench extends Command {
 
 	@Override
 	public String getUsage() {
-		return "bench <action> [jsonParams]";
+		return "bench <action|--workload file> [jsonParams]";
 	}
 
 	@Override
@@ -81,44 +131,115 @@ public class Bench extends Command {
 		return 1;
 	}
 
-	protected ScheduledFuture<?> timer;
-
 	protected ExecutorService executor;
 
 	@Override
 	public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) throws Exception {
-		executor = broker.getConfig().getExecutor();
 
 		// Check parameter sequence
-		if (parameters[0].startsWith("--")) {
+		boolean mix = Arrays.asList(parameters).contains("--workload");
+		if (parameters[0].startsWith("--") && !mix) {
 			out.println("Invalid parameter sequence! Examples of appropriate \"bench\" commands:");
 			out.println();
 			out.println("bench $node.list --num 100");
 			out.println("bench $node.list --num 100 --nodeID node1");
 			out.println("bench $node.list --time 10");
 			out.println("bench $node.list --time 10 --max 10");
+			out.println("bench $node.list --time 10 --rate 500");
+			out.println("bench $node.list --time 600 --interval 1s");
+			out.println("bench $node.list --time 10 --nodes node1,node2,node3");
+			out.println("bench $node.list --time 10 --warmup 30s");
+			out.println("bench $node.list --time 10 --max 1000 --virtual-threads");
+			out.println("bench $node.list --time 60 --out /temp/baseline.json --csv /temp/history.csv");
+			out.println("bench $node.list --time 60 --compare /temp/baseline.json");
+			out.println("bench $node.list --find-max --slo p99<50ms");
+			out.println("bench $node.list --find-max --slo p99.9<10ms --rate 1000");
 			out.println("bench $node.actions --time 120 {\"onlyLocal\":true}");
 			out.println("bench $node.actions --time 120 onlyLocal true");
+			out.println("bench --workload /temp/workload.json --time 60");
+			out.println("bench users.get --time 10 {\"id\":\"${int:1:100000}\",\"data\":\"${bytes:4k}\"}");
 			return;
 		}
-		
+
 		// Parse parameters
-		String action = parameters[0];
-		Collection<String> knownParams = Arrays.asList(new String[]{"num", "time", "nodeID", "max", "retry"});
-		Tree flags = parseFlags(1, parameters, knownParams);
+		Tree flags = parseBenchFlags(parameters);
+
+		// Search the maximum sustainable load
+		if (flags.get("find-max") != null) {
+			try {
+				findMax(broker, out, parameters, flags);
+			} catch (IllegalArgumentException e) {
+				out.println(e.getMessage());
+			}
+			return;
+		}
+
+		// Start benchmark on multiple nodes
+		String nodes = flags.get("nodes", "");
+		if (nodes != null && !nodes.isEmpty()) {
+			runDistributed(broker, out, parameters, flags, nodes.split(","));
+			return;
+		}
+
+		// Create benchmark
+		BenchData data;
+		try {
+			data = createBench(broker, out, parameters, flags, null);
+		} catch (Exception e) {
+			out.println("Unable to start benchmark!");
+			out.println();
+			e.printStackTrace(out);
+			return;
+		}
+
+		// Start benchmark...
+		printHeader(data);
+		runBench(broker, data);
+	}
+
+	protected Tree parseBenchFlags(String[] parameters) {
+		Collection<String> knownParams = Arrays.asList(new String[] { "num", "time", "nodeID", "max", "retry", "rate",
+				"interval", "workload", "seed", "nodes", "find-max", "slo", "step-time", "step-warmup", "warmup",
+				"virtual-threads", "out", "csv", "histlog", "compare", "jfr" });
+		return parseFlags(parameters[0].startsWith("--") ? 0 : 1, parameters, knownParams);
+	}
+
+	/**
+	 * Creates a benchmark by the command line parameters.
+	 *
+	 * @param broker
+	 *            parent ServiceBroker
+	 * @param out
+	 *            output of the reports
+	 * @param parameters
+	 *            command line parameters
+	 * @param flags
+	 *            parsed flags
+	 * @param workload
+	 *            already loaded workload (or null)
+	 *
+	 * @return new benchmark
+	 *
+	 * @throws Exception
+	 *             invalid parameters or workload
+	 */
+	protected BenchData createBench(ServiceBroker broker, PrintWriter out, String[] parameters, Tree flags,
+			Tree workload) throws Exception {
 		long num = flags.get("num", 0);
-		long time = flags.get("time", 0);
+		long time = parseMillis(flags.get("time", ""));
 		int retry = flags.get("retry", 0);
 		String nodeID = flags.get("nodeID", "");
 		int lastIndex = flags.get("lastIndex", 0);
 		int max = flags.get("max", 100);
+		long rate = flags.get("rate", 0L);
+		long interval = parseMillis(flags.get("interval", ""));
+		long seed = flags.get("seed", 0L);
 		if (num > 0) {
 			max = Math.min(max, (int) num);
 		}
-		Tree params = getPayload(lastIndex + 1, parameters);
 
 		if (num < 1 && time < 1) {
-			time = 5;
+			time = 5000;
 		}
 		if (max < 1) {
 			max = 1;
@@ -128,210 +249,1962 @@ public class Bench extends Command {
 			opts = opts.nodeID(nodeID);
 		}
 
+		// Create targets
+		BenchTarget[] targets;
+		String description;
+		String path = flags.get("workload", "");
+		if (workload != null || (path != null && !path.isEmpty())) {
+			if (workload == null) {
+				workload = loadFile(path);
+			}
+			targets = parseWorkload(workload, retry, nodeID);
+			description = targets.length + " actions of workload \"" + path + "\"";
+		} else {
+			String action = parameters[0];
+			Tree params = getPayload(lastIndex + 1, parameters);
+			targets = new BenchTarget[] { new BenchTarget(action, 1, params, opts) };
+			description = "'" + action + "'";
+		}
+
+		// Parse ${...} placeholders
+		for (BenchTarget target : targets) {
+			target.template = PayloadTemplate.parse(target.params, seed);
+		}
+
+		BenchData data = new BenchData(broker, out, targets, num, rate);
+		data.time = time;
+		data.max = max;
+		data.reportInterval = interval;
+
+		// Blocking calls from virtual threads
+		if (flags.get("virtual-threads") != null) {
+			if (rate > 0) {
+				throw new IllegalArgumentException(
+						"The \"--virtual-threads\" and \"--rate\" flags cannot be combined!");
+			}
+			if (!VirtualThreads.isSupported()) {
+				throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!");
+			}
+			data.virtualThreads = true;
+		}
+
+		// Output files and baseline
+		data.outFile = flags.get("out", (String) null);
+		data.csvFile = flags.get("csv", (String) null);
+		data.histlogFile = flags.get("histlog", (String) null);
+		if (data.histlogFile != null && new File(data.histlogFile).getName().indexOf('.') == -1) {
+			data.histlogFile += HISTLOG_EXTENSION;
+		}
+		String compare = flags.get("compare", "");
+		if (compare != null && !compare.isEmpty()) {
+			data.baseline = loadFile(compare);
+			data.baselineFile = compare;
+		}
+
+		// JFR recording
+		String jfr = flags.get("jfr", "");
+		if (jfr != null && !jfr.isEmpty()) {
+			data.jfrFile = Paths.get(jfr);
+		}
+
+		// Warmup limit ("30s" or number of requests)
+		String warmup = flags.get("warmup", "");
+		if (warmup != null && !warmup.trim().isEmpty()) {
+			warmup = warmup.trim();
+			if (Character.isDigit(warmup.charAt(warmup.length() - 1))) {
+				data.warmupCount = Long.parseLong(warmup);
+			} else {
+				data.warmupTime = parseMillis(warmup);
+			}
+		}
+		data.description = description;
+		return data;
+	}
+
+	protected void printHeader(BenchData data) {
+		PrintWriter out = data.out;
+		String msg = data.num > 0 ? data.num + " times" : "for " + formatNamoSec(data.time * 1000000L);
+		if (data.rate > 0) {
+			msg += " at " + formatNumber(data.rate) + " req/sec";
+		}
+		if (data.targets.length > 1) {
+			out.println(YELLOW + ">> Calling " + data.description + " " + msg + ":");
+			for (BenchTarget target : data.targets) {
+				out.println("   " + target.action + " (weight: " + target.weight + ") with params: "
+						+ target.params.toString("colorized-json", false));
+			}
+		} else {
+			out.println(YELLOW + ">> Calling " + data.description + " " + msg + " with params: "
+					+ data.targets[0].params.toString("colorized-json", false));
+		}
+		out.println();
+	}
+
+	/**
+	 * Runs the benchmark. Blocks the current thread until the end of the
+	 * benchmark.
+	 *
+	 * @param broker
+	 *            parent ServiceBroker
+	 * @param data
+	 *            benchmark
+	 *
+	 * @throws InterruptedException
+	 *             thread interrupted
+	 */
+	protected void runBench(ServiceBroker broker, BenchData data) throws InterruptedException {
+		if (data.warmupTime > 0 || data.warmupCount > 0) {
+			runWarmup(broker, data);
+		}
+		executor = broker.getConfig().getExecutor();
+		ScheduledExecutorService scheduler = broker.getConfig().getScheduler();
+
 		// Start timer
-		BenchData data = new BenchData(broker, opts, out, action, params, num);
-		if (timer != null) {
-			timer.cancel(true);
+		data.startTime = System.nanoTime();
+		data.lastIntervalTime = data.startTime;
+
+		// Start profiling (after the warmup)
+		if (data.jfrFile != null) {
+			try {
+				data.recording = JfrProfiler.start("bench");
+			} catch (Throwable cause) {
+				data.jfrError = cause;
+			}
 		}
-		timer = broker.getConfig().getScheduler().schedule(() -> {
+		data.timer = scheduler.schedule(() -> {
 			data.timeout.set(true);
-		}, time < 1 ? 60 : time, TimeUnit.SECONDS);
+		}, data.time < 1 ? 60000 : data.time, TimeUnit.MILLISECONDS);
 
-		// Start benchmark...
-		String msg = num > 0 ? num + " times" : "for " + formatNamoSec(time * 1000000000);
-		out.println(YELLOW + ">> Calling '" + action + "' " + msg + " with params: "
-				+ params.toString("colorized-json", false));
-		out.println();
+		// Create histogram log (the intervals are appended by the reporter)
+		if (data.histlogFile != null) {
+			startHistlog(data);
+		}
+
+		// Start interval reporter (on its own thread, a slow console must not
+		// delay the scheduled requests)
+		if (data.reportInterval > 0) {
+			data.reportExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "bench-reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			data.reporter = data.reportExecutor.scheduleAtFixedRate(() -> {
+				printInterval(data);
+			}, data.reportInterval, data.reportInterval, TimeUnit.MILLISECONDS);
+		}
 
+		// Enable the allocation counters (only while the benchmark is running)
+		Allocations.enable();
+		try {
+			data.gcStart = GcSnapshot.take();
+			data.lastGc = data.gcStart;
+			waitForBench(broker, data, scheduler);
+			data.done.await();
+		} catch (InterruptedException interrupted) {
+
+			// Session closed (or console stopped)
+			stop(data);
+			throw interrupted;
+		} finally {
+			stopRecording(data);
+			Allocations.release();
+		}
+
+		// Print report (on the command thread, not on a response callback)
+		if (data.completed && !data.quiet) {
+			printResult(data);
+		}
+	}
+
+	/**
+	 * Sends the requests (or schedules them) until the end of the benchmark.
+	 * The end of the last responses is signaled by the "done" latch.
+	 */
+	protected void waitForBench(ServiceBroker broker, BenchData data, ScheduledExecutorService scheduler)
+			throws InterruptedException {
+
+		// Open-loop mode (requests are sent by the schedule)
+		if (data.rate > 0) {
+			long period = Math.max(data.interval, 1000000L);
+			data.ticker = scheduler.scheduleAtFixedRate(() -> {
+				sendScheduledRequests(broker, data);
+			}, 0, period, TimeUnit.NANOSECONDS);
+			return;
+		}
+
+		// Closed-loop mode with blocking calls
+		if (data.virtualThreads) {
+			runVirtualThreads(broker, data);
+			return;
+		}
+
+		// Closed-loop mode (a new request is sent when a response arrives)
 		long req, res;
 		while (!data.finished.get()) {
 			req = data.reqCount.get();
 			res = data.resCount.get();
-			if (req - res < max) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (req - res < data.max) {
 				doRequest(broker, data);
 			} else {
 				Thread.sleep(1);
 			}
 		}
-		
-		// Waiting for printing report
-		Thread.sleep(100);
 	}
 
-	protected void doRequest(ServiceBroker broker, BenchData data) {
-		data.reqCount.incrementAndGet();
-		long startTime = System.nanoTime();
-		try {
-			broker.call(data.action, data.params, data.opts).then(res -> {
-				handleResponse(broker, data, startTime, null);
-			}).catchError(cause -> {
-				handleResponse(broker, data, startTime, cause);
-			});			
-		} catch (Exception err) {
-			handleResponse(broker, data, startTime, err);
+	// --- WARMUP ---
+
+	/**
+	 * Length of the windows of the steady-state detection, in milliseconds.
+	 */
+	protected static final long STEADY_WINDOW = 500;
+
+	/**
+	 * Number of consecutive windows compared.
+	 */
+	protected static final int STEADY_WINDOWS = 5;
+
+	/**
+	 * Maximum coefficient of variation (standard deviation / mean) of the
+	 * throughput and the mean latency of the compared windows.
+	 */
+	protected static final double STEADY_VARIATION = 0.1;
+
+	/**
+	 * Calls the service with the parameters of the benchmark, and discards the
+	 * results, until the throughput and the latency are stable or the warmup
+	 * limit (time or number of requests) is reached.
+	 */
+	protected void runWarmup(ServiceBroker broker, BenchData data) throws InterruptedException {
+		BenchTarget[] targets = new BenchTarget[data.targets.length];
+		for (int i = 0; i < targets.length; i++) {
+			BenchTarget target = data.targets[i];
+			targets[i] = new BenchTarget(target.action, target.weight, target.params, target.opts);
+			targets[i].template = target.template;
+			if (target.histogram != null) {
+				targets[i].histogram = new LatencyHistogram();
+			}
+		}
+		BenchData warmup = new BenchData(broker, data.out, targets, data.warmupCount, data.rate);
+		warmup.time = data.warmupCount > 0 ? 0 : data.warmupTime;
+		warmup.max = data.warmupCount > 0 ? (int) Math.min(data.max, data.warmupCount) : data.max;
+		warmup.quiet = true;
+		warmup.virtualThreads = data.virtualThreads;
+		warmup.windowRates = new double[STEADY_WINDOWS];
+		warmup.windowLatencies = new double[STEADY_WINDOWS];
+		if (!data.quiet) {
+			data.out.println(GRAY + "  Warming up...");
+			data.out.flush();
+		}
+
+		// Check the last windows periodically
+		ScheduledFuture<?> checker = broker.getConfig().getScheduler().scheduleAtFixedRate(() -> {
+			if (!warmup.timeout.get() && isSteady(warmup)) {
+				data.steadyTime = System.nanoTime() - warmup.startTime;
+				warmup.timeout.set(true);
+			}
+		}, STEADY_WINDOW, STEADY_WINDOW, TimeUnit.MILLISECONDS);
+		runBench(broker, warmup);
+		checker.cancel(false);
+		data.warmupRequests = warmup.resCount.get();
+		data.warmupDuration = warmup.finishTime - warmup.startTime;
+		if (!data.quiet) {
+			data.out.println(GRAY + "  " + formatWarmup(data));
+			data.out.println();
+			data.out.flush();
 		}
 	}
 
-	protected void handleResponse(ServiceBroker broker, BenchData data, long startTime, Throwable cause) {
-		if (data.finished.get()) {
-			return;
+	protected boolean isSteady(BenchData data) {
+		long now = System.nanoTime();
+		long resCount = data.resCount.get();
+		HistogramSnapshot snapshot = data.histogram.snapshot();
+		HistogramSnapshot delta = snapshot.minus(data.lastSnapshot);
+		long elapsed = Math.max(1, now - data.lastIntervalTime);
+		int i = data.windowCount++ % STEADY_WINDOWS;
+		data.windowRates[i] = (resCount - data.lastResCount) * 1000000000d / elapsed;
+		data.windowLatencies[i] = delta.getMean();
+		data.lastSnapshot = snapshot;
+		data.lastResCount = resCount;
+		data.lastIntervalTime = now;
+		return data.windowCount >= STEADY_WINDOWS && variation(data.windowRates) <= STEADY_VARIATION
+				&& variation(data.windowLatencies) <= STEADY_VARIATION;
+	}
+
+	protected static double variation(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		double mean = sum / values.length;
+		if (mean <= 0) {
+			return Double.MAX_VALUE;
+		}
+		double squares = 0;
+		for (double value : values) {
+			squares += (value - mean) * (value - mean);
 		}
+		return Math.sqrt(squares / values.length) / mean;
+	}
 
-		long duration = System.nanoTime() - startTime;
-		data.sumTime.addAndGet(duration);
-	
-		long count = data.resCount.incrementAndGet();
-		if (cause != null) {
-			if (data.errorCount.incrementAndGet() == 1) {
-				data.cause = cause;
-			}
-			Throwable type;
-			if (cause instanceof CompletionException) {
-				type = ((CompletionException) cause).getCause();
-			} else {
-				type = cause;
-			}
-			if (type instanceof ServiceNotFoundError || type instanceof ServiceNotAvailableError) {
-				if (data.finished.compareAndSet(false, true)) {
-					if (timer != null) {
-						timer.cancel(true);
-					}
-				}
-				return;
-			}
+	protected String formatWarmup(BenchData data) {
+		String requests = " (" + formatNumber(data.warmupRequests) + " requests)";
+		if (data.steadyTime > 0) {
+			return "Steady state reached after " + formatNamoSec(data.steadyTime) + requests;
+		}
+		return "Steady state not reached in " + formatNamoSec(data.warmupDuration) + requests;
+	}
+
+	// --- SATURATION SEARCH ---
+
+	/**
+	 * Steps with more errors than this ratio fail, whatever their latency.
+	 */
+	protected static final double MAX_ERROR_RATIO = 0.01;
+
+	/**
+	 * In rate mode, steps below this fraction of the target rate fail.
+	 */
+	protected static final double MIN_RATE_RATIO = 0.9;
+
+	/**
+	 * Ramps the concurrency (or the request rate, if "--rate" is specified) up
+	 * by doubling it until the SLO is violated, then bisects between the last
+	 * passing and the first failing level. Every step has a warmup period and
+	 * a measurement window.
+	 */
+	protected void findMax(ServiceBroker broker, PrintWriter out, String[] parameters, Tree flags)
+			throws Exception {
+
+		// Parse SLO (eg. "p99<50ms")
+		String slo = flags.get("slo", "p99<100ms").trim();
+		int i = slo.indexOf('<');
+		if (!slo.startsWith("p") || i < 2) {
+			throw new IllegalArgumentException("Invalid SLO format (eg. \"p99<50ms\"): " + slo);
 		}
+		double percentile = Double.parseDouble(slo.substring(1, i));
+		long limit = parseNanos(slo.substring(i + 1));
+		if (percentile <= 0 || percentile > 100 || limit < 1) {
+			throw new IllegalArgumentException("Invalid SLO: " + slo);
+		}
+		String label = slo.substring(0, i);
+
+		boolean byRate = flags.get("rate", 0L) > 0;
+		long level = byRate ? flags.get("rate", 0L) : Math.max(1, flags.get("max", 1));
+		long ceiling = byRate ? 1000000 : 10000;
+		long warmup = parseMillis(flags.get("step-warmup", "1s"));
+		long window = Math.max(100, parseMillis(flags.get("step-time", "5s")));
+
+		String target = parameters[0].startsWith("--") ? "workload" : "'" + parameters[0] + "'";
+		out.println(YELLOW + ">> Searching the maximum " + (byRate ? "request rate" : "concurrency") + " of "
+				+ target + " where " + label + " < " + formatNamoSec(limit) + ":");
+		out.println();
 
-		long currentMin = data.minTime.get();
+		LinkedList<StepResult> steps = new LinkedList<>();
+		StepResult best = null;
+		long good = 0;
+		long bad = 0;
 		while (true) {
-			if (duration < currentMin) {
-				if (data.minTime.compareAndSet(currentMin, duration)) {
-					break;
+			StepResult step = measureStep(broker, parameters, byRate, level, warmup, window, percentile);
+			if (step.cause != null) {
+				out.println(YELLOW + "Benchmark aborted:");
+				out.println();
+				step.cause.printStackTrace(out);
+				return;
+			}
+			step.passed = step.latency < limit && step.errors <= step.requests * MAX_ERROR_RATIO
+					&& (!byRate || step.throughput >= level * MIN_RATE_RATIO);
+			steps.add(step);
+			out.println(GRAY + "  " + (byRate ? "Rate " : "Concurrency ") + formatNumber(level) + ": "
+					+ formatNumber(step.throughput) + " req/sec, " + label + " " + formatNamoSec(step.latency)
+					+ (step.passed ? "" : " (SLO violated)"));
+			out.flush();
+			if (step.passed) {
+				good = level;
+				if (best == null || step.throughput > best.throughput) {
+					best = step;
 				}
-				currentMin = data.minTime.get();
 			} else {
-				break;
+				bad = level;
 			}
-		}
 
-		long currentMax = data.maxTime.get();
-		while (true) {
-			if (duration > currentMax) {
-				if (data.maxTime.compareAndSet(currentMax, duration)) {
+			// Next level
+			if (bad == 0) {
+				if (level >= ceiling) {
 					break;
 				}
-				currentMax = data.maxTime.get();
+				level = Math.min(ceiling, level * 2);
 			} else {
-				break;
+				if (bad - good <= Math.max(1, good / 20)) {
+					break;
+				}
+				level = (good + bad) / 2;
 			}
 		}
 
-		if (data.timeout.get() || (data.num > 0 && count >= data.num)) {
-			if (data.finished.compareAndSet(false, true)) {
-				if (timer != null) {
-					timer.cancel(true);
-				}
-				printResult(data);
-			}
-			return;
+		// Print curve
+		out.println();
+		TextTable table = new TextTable(byRate ? "Rate" : "Concurrency", "Req/sec", "Errors", "Average", "p50",
+				label, "Maximum", "SLO");
+		steps.sort((a, b) -> Long.compare(a.level, b.level));
+		for (StepResult step : steps) {
+			HistogramSnapshot snapshot = step.snapshot;
+			table.addRow(formatNumber(step.level), formatNumber(step.throughput), formatNumber(step.errors),
+					formatNamoSec(snapshot.getMean()), formatNamoSec(snapshot.getValueAtPercentile(50)),
+					formatNamoSec(step.latency), formatNamoSec(snapshot.getMax()), step.passed ? "OK" : "FAIL");
+		}
+		out.println(table);
+		out.println();
+		if (best == null) {
+			out.println(YELLOW + "None of the load levels met the SLO.");
+		} else {
+			out.println(GREEN + "Maximum sustainable throughput: " + WHITE + formatNumber(best.throughput)
+					+ " req/sec" + GRAY + " (" + (byRate ? "rate " : "concurrency ") + formatNumber(best.level) + ", "
+					+ label + " " + formatNamoSec(best.latency) + ")");
 		}
+	}
 
-		if (count % 100 > 0) {
-			doRequest(broker, data);
+	protected StepResult measureStep(ServiceBroker broker, String[] parameters, boolean byRate, long level,
+			long warmup, long window, double percentile) throws Exception {
+		Tree flags = parseBenchFlags(parameters);
+		flags.remove("num");
+		flags.remove("interval");
+		flags.remove("warmup");
+		flags.remove("out");
+		flags.remove("csv");
+		flags.remove("histlog");
+		flags.remove("compare");
+		flags.remove("jfr");
+		flags.put("time", (warmup + window) + "ms");
+		if (byRate) {
+			flags.put("rate", level);
 		} else {
-			executor.execute(() -> {
-				doRequest(broker, data);
-			});
+			flags.put("max", level);
 		}
+		BenchData data = createBench(broker, new PrintWriter(Writer.nullWriter()), parameters, flags, null);
+		data.quiet = true;
+
+		// Drop the results of the warmup period
+		StepResult step = new StepResult(level);
+		ScheduledFuture<?> marker = broker.getConfig().getScheduler().schedule(() -> {
+			step.begin(data);
+		}, warmup, TimeUnit.MILLISECONDS);
+		runBench(broker, data);
+		marker.cancel(false);
+		step.end(data, percentile);
+		return step;
 	}
 
-	protected void printResult(BenchData data) {
-		PrintWriter out = data.out;
-		try {
-			long now = System.nanoTime();
+	protected static final class StepResult {
+
+		protected final long level;
 
-			BigDecimal errorCount = new BigDecimal(data.errorCount.get());
-			BigDecimal resCount = new BigDecimal(data.resCount.get());
-			BigDecimal sumTime = new BigDecimal(data.sumTime.get());
+		protected long beginTime;
+		protected long beginRequests;
+		protected long beginErrors;
+		protected HistogramSnapshot beginSnapshot;
 
-			long total = now - data.startTime;
-			BigDecimal totalTime = new BigDecimal(total);
+		protected long requests;
+		protected long errors;
+		protected long throughput;
+		protected long latency;
+		protected HistogramSnapshot snapshot;
 
-			BigDecimal nano = new BigDecimal(1000000000);
-			BigDecimal reqPerSec = nano.multiply(resCount).divide(totalTime, RoundingMode.HALF_UP);
-			long reqPer = Long.parseLong(reqPerSec.toBigInteger().toString());
+		protected boolean passed;
+		protected Throwable cause;
 
-			BigDecimal duration = sumTime.divide(resCount, RoundingMode.HALF_UP);
-			long dur = Long.parseLong(duration.toBigInteger().toString());
-			BigDecimal inSec = duration.divide(nano);
+		protected StepResult(long level) {
+			this.level = level;
+		}
 
-			String errStr;
-			if (errorCount.compareTo(BigDecimal.ZERO) == 1) {
-				String percent = errorCount.multiply(new BigDecimal(100)).divide(resCount, RoundingMode.HALF_UP)
-						.toBigInteger().toString();
-				errStr = formatNumber(data.errorCount) + " error(s) " + percent + "%";
-			} else {
-				errStr = "0 error";
+		protected synchronized void begin(BenchData data) {
+			beginTime = System.nanoTime();
+			beginRequests = data.resCount.get();
+			beginErrors = data.errorCount.get();
+			beginSnapshot = snapshotOf(data);
+		}
+
+		protected synchronized void end(BenchData data, double percentile) {
+			if (!data.timeout.get()) {
+
+				// Stopped by "service not found" error
+				cause = data.cause == null ? new IllegalStateException("Benchmark interrupted.") : data.cause;
+				return;
 			}
-			out.println(GREEN + "Benchmark results:");
-			out.println();
-			out.println("  " + WHITE + formatNumber(data.resCount) + " requests in " + formatNamoSec(total) + ", "
-					+ GRAY + errStr);
+			if (beginSnapshot == null) {
+				begin(data);
+			}
+			snapshot = snapshotOf(data).minus(beginSnapshot);
+			requests = data.resCount.get() - beginRequests;
+			errors = data.errorCount.get() - beginErrors;
+			throughput = requests * 1000000000L / Math.max(1, data.finishTime - beginTime);
+			latency = snapshot.getValueAtPercentile(percentile);
+		}
+
+		protected HistogramSnapshot snapshotOf(BenchData data) {
+			return data.rate > 0 ? data.correctedHistogram.snapshot() : data.histogram.snapshot();
+		}
+
+	}
+
+	// --- DISTRIBUTED BENCHMARK ---
+
+	/**
+	 * Delay of the synchronized start, in milliseconds.
+	 */
+	protected static final long DISTRIBUTED_START_DELAY = 2000;
+
+	protected void runDistributed(ServiceBroker broker, PrintWriter out, String[] parameters, Tree flags,
+			String[] nodeIDs) throws Exception {
+
+		// Arguments of the remote benchmarks
+		LinkedList<String> args = new LinkedList<>(Arrays.asList(parameters));
+		removeFlag(args, "nodes");
+		removeFlag(args, "interval");
+		removeFlag(args, "out");
+		removeFlag(args, "csv");
+		removeFlag(args, "histlog");
+		removeFlag(args, "compare");
+		removeFlag(args, "jfr");
+		String path = flags.get("workload", "");
+		Tree request = new Tree();
+		if (path != null && !path.isEmpty()) {
+			try {
+				request.put("workload", loadFile(path).toString("json", false));
+			} catch (Exception e) {
+				out.println("Unable to load workload file \"" + path + "\"!");
+				out.println();
+				e.printStackTrace(out);
+				return;
+			}
+		}
+		Tree list = request.putList("args");
+		for (String arg : args) {
+			list.add(arg);
+		}
+		request.put("startAt", System.currentTimeMillis() + DISTRIBUTED_START_DELAY);
+
+		// Start benchmarks
+		long timeout = DISTRIBUTED_START_DELAY + maxDuration(flags) + 30000;
+		StringBuilder names = new StringBuilder(64);
+		Promise[] promises = new Promise[nodeIDs.length];
+		for (int i = 0; i < nodeIDs.length; i++) {
+			nodeIDs[i] = nodeIDs[i].trim();
+			if (names.length() > 0) {
+				names.append(", ");
+			}
+			names.append(nodeIDs[i]);
+			promises[i] = broker.call(BenchService.ACTION_NAME, request,
+					CallOptions.nodeID(nodeIDs[i]).timeout(timeout));
+		}
+		String target = path == null || path.isEmpty() ? "'" + parameters[0] + "'" : "workload \"" + path + "\"";
+		out.println(YELLOW + ">> Benchmarking " + target + " from " + nodeIDs.length + " nodes (" + names + ")...");
+		out.println();
+		out.flush();
+
+		// Collect results
+		TextTable table = new TextTable("Node", "Requests", "Errors", "Req/sec", "Average", "p50", "p99",
+				"Maximum");
+		long requests = 0;
+		long errors = 0;
+		long duration = 0;
+		long rate = 0;
+		HistogramSnapshot merged = null;
+		HistogramSnapshot mergedCorrected = null;
+		LinkedList<String> failures = new LinkedList<>();
+		for (int i = 0; i < nodeIDs.length; i++) {
+			try {
+				Tree rsp = promises[i].waitFor(timeout);
+				HistogramSnapshot snapshot = HistogramSnapshot
+						.fromBytes(Base64.getDecoder().decode(rsp.get("histogram", "")));
+				String corrected = rsp.get("corrected", "");
+				if (corrected != null && !corrected.isEmpty()) {
+					mergedCorrected = HistogramSnapshot.fromBytes(Base64.getDecoder().decode(corrected))
+							.add(mergedCorrected);
+				}
+				merged = snapshot.add(merged);
+				long count = rsp.get("requests", 0L);
+				long nanos = rsp.get("duration", 1L);
+				requests += count;
+				errors += rsp.get("errors", 0L);
+				duration = Math.max(duration, nanos);
+				rate += rsp.get("rate", 0L);
+				String error = rsp.get("error", "");
+				if (error != null && !error.isEmpty()) {
+					failures.add(nodeIDs[i] + ": " + error);
+				}
+				table.addRow(nodeIDs[i], formatNumber(count), formatNumber(rsp.get("errors", 0L)),
+						formatNumber(count * 1000000000L / Math.max(1, nanos)), formatNamoSec(snapshot.getMean()),
+						formatNamoSec(snapshot.getValueAtPercentile(50)),
+						formatNamoSec(snapshot.getValueAtPercentile(99)), formatNamoSec(snapshot.getMax()));
+			} catch (Exception cause) {
+				table.addRow(nodeIDs[i], "FAILED", "", "", "", "", "", "");
+				failures.add(nodeIDs[i] + ": " + String.valueOf(cause));
+			}
+		}
+
+		// Print report
+		out.println(GREEN + "Load generators:");
+		out.println();
+		out.println(table);
+		out.println();
+		if (merged != null) {
+			printLatencyReport(out, requests, errors, duration, rate, merged, mergedCorrected);
+		}
+		if (!failures.isEmpty()) {
 			out.println();
-			out.println("  Requests per second: " + WHITE + formatNumber(reqPer));
+			out.println(YELLOW + "Errors:");
 			out.println();
-			out.println("  Latency: ");
-			out.println("    Average: " + WHITE + formatNamoSec(dur) + " (" + inSec.toPlainString() + " second)");
-			if (data.minTime.get() != Long.MAX_VALUE) {
-				out.println("    Minimum: " + WHITE + formatNamoSec(data.minTime.get()));
+			for (String failure : failures) {
+				out.println("  " + failure);
 			}
-			if (data.maxTime.get() != Long.MIN_VALUE) {
-				out.println("    Maximum: " + WHITE + formatNamoSec(data.maxTime.get()));
-			}
-			if (data.cause != null) {
-				out.println();
-				out.println(YELLOW + "Trace of the first faulty response:");
-				out.println();
-				data.cause.printStackTrace(out);
+		}
+	}
+
+	/**
+	 * Upper limit of the duration of a benchmark (with the warmup), in
+	 * milliseconds.
+	 */
+	protected long maxDuration(Tree flags) {
+		long time = parseMillis(flags.get("time", ""));
+		long duration = time < 1 ? 60000 : time;
+		String warmup = flags.get("warmup", "");
+		if (warmup != null && !warmup.trim().isEmpty()) {
+			warmup = warmup.trim();
+
+			// A warmup limited by request count stops after 60 seconds
+			duration += Character.isDigit(warmup.charAt(warmup.length() - 1)) ? 60000 : parseMillis(warmup);
+		}
+		return duration;
+	}
+
+	protected void removeFlag(LinkedList<String> args, String name) {
+		int i = args.indexOf("--" + name);
+		if (i > -1) {
+			args.remove(i);
+			if (i < args.size() && !args.get(i).startsWith("--")) {
+				args.remove(i);
 			}
-		} catch (Exception e) {
-			e.printStackTrace(out);
 		}
 	}
 
-	protected static final class BenchData {
+	/**
+	 * Maximum delay of the synchronized start of a remote benchmark, in
+	 * milliseconds.
+	 */
+	protected static final long MAX_START_DELAY = 60000;
 
-		protected final long startTime;
+	/**
+	 * Flags (with value) which can be passed to a remote benchmark.
+	 */
+	protected static final Collection<String> REMOTE_FLAGS = Arrays.asList(new String[] { "num", "time", "max",
+			"rate", "seed", "warmup", "retry", "nodeID" });
 
-		protected final ServiceBroker broker;
-		protected final CallOptions.Options opts;
-		protected final PrintWriter out;
-		protected final String action;
-		protected final Tree params;
-		protected final long num;
+	/**
+	 * Flags which refer to local files (never accepted from another node).
+	 */
+	protected static final Collection<String> FILE_FLAGS = Arrays
+			.asList(new String[] { "out", "csv", "histlog", "compare", "jfr" });
 
-		protected final AtomicLong reqCount = new AtomicLong();
-		protected final AtomicLong resCount = new AtomicLong();
-		protected final AtomicLong errorCount = new AtomicLong();
-		protected final AtomicLong sumTime = new AtomicLong();
+	/**
+	 * Rebuilds the command line of a remote benchmark from the allowed flags.
+	 *
+	 * @param args
+	 *            arguments sent by the other node
+	 * @param inlineWorkload
+	 *            the workload was sent in the request
+	 *
+	 * @return safe command line parameters
+	 */
+	protected String[] remoteParameters(LinkedList<String> args, boolean inlineWorkload) {
+		if (args.isEmpty()) {
+			if (inlineWorkload) {
+				return new String[] { "--workload" };
+			}
+			throw new IllegalArgumentException("Missing action name!");
+		}
+		String[] parameters = new String[args.size()];
+		args.toArray(parameters);
+		Tree flags = parseBenchFlags(parameters);
+		for (String name : FILE_FLAGS) {
+			if (flags.get(name) != null) {
+				throw new IllegalArgumentException("Flag \"--" + name + "\" is not allowed in remote benchmarks!");
+			}
+		}
+		LinkedList<String> safe = new LinkedList<>();
+		if (inlineWorkload) {
+
+			// The workload comes only from the request, never from a file
+			safe.add("--workload");
+		} else {
+			if (parameters[0].startsWith("--")) {
+				throw new IllegalArgumentException("Missing action name!");
+			}
+			safe.add(parameters[0]);
+		}
+		for (String name : REMOTE_FLAGS) {
+			String value = flags.get(name, (String) null);
+			if (value != null) {
+				safe.add("--" + name);
+				safe.add(value);
+			}
+		}
+		if (flags.get("virtual-threads") != null) {
+			safe.add("--virtual-threads");
+		}
+		if (!inlineWorkload) {
+			int lastIndex = flags.get("lastIndex", 0);
+			for (int i = lastIndex + 1; i < parameters.length; i++) {
+				safe.add(parameters[i]);
+			}
+		}
+		return safe.toArray(new String[safe.size()]);
+	}
 
-		protected final AtomicLong minTime = new AtomicLong(Long.MAX_VALUE);
-		protected final AtomicLong maxTime = new AtomicLong(Long.MIN_VALUE);
+	/**
+	 * Runs a benchmark on behalf of a "bench --nodes ..." command of another
+	 * node. Invoked by the "run" action of the BenchService. The benchmark runs
+	 * on its own thread (the executor of the broker processes the responses).
+	 *
+	 * @param broker
+	 *            parent ServiceBroker
+	 * @param request
+	 *            the command line arguments and the start time
+	 * @param maxTime
+	 *            maximum duration (with the warmup) in milliseconds
+	 * @param maxConcurrency
+	 *            maximum number of pending requests
+	 * @param maxRate
+	 *            maximum request rate (requests / second)
+	 * @param finished
+	 *            invoked once, at the end of the benchmark (or when it is
+	 *            rejected)
+	 *
+	 * @return Promise of the results (with the histograms in binary form)
+	 */
+	public Promise runRemote(ServiceBroker broker, Tree request, long maxTime, int maxConcurrency, long maxRate,
+			Runnable finished) {
+		return new Promise(r -> {
+			BenchData data;
+			long delay;
+			try {
+				LinkedList<String> args = new LinkedList<>();
+				for (Tree arg : request.get("args")) {
+					args.add(arg.asString());
+				}
+				String json = request.get("workload", "");
+				Tree workload = json == null || json.isEmpty() ? null : new Tree(json);
+				String[] parameters = remoteParameters(args, workload != null);
+				delay = Math.max(0, request.get("startAt", 0L) - System.currentTimeMillis());
+				if (delay > MAX_START_DELAY) {
+					throw new IllegalArgumentException("Start time is too far in the future (" + delay + " msec)!");
+				}
 
-		protected final AtomicBoolean timeout = new AtomicBoolean();
-		protected final AtomicBoolean finished = new AtomicBoolean();
+				// Check the limits of the node
+				Tree flags = parseBenchFlags(parameters);
+				if (maxDuration(flags) > maxTime) {
+					throw new IllegalArgumentException("Benchmark is longer than " + maxTime + " msec!");
+				}
+				if (flags.get("max", 100) > maxConcurrency) {
+					throw new IllegalArgumentException("More than " + maxConcurrency + " pending requests!");
+				}
+				if (flags.get("rate", 0L) > maxRate) {
+					throw new IllegalArgumentException("Request rate is higher than " + maxRate + " req/sec!");
+				}
+				PrintWriter out = new PrintWriter(Writer.nullWriter());
+				data = createBench(broker, out, parameters, flags, workload);
+				data.quiet = true;
+			} catch (Throwable cause) {
+				finished.run();
+				r.reject(cause);
+				return;
+			}
+			Thread thread = new Thread(() -> {
+				try {
 
-		protected Throwable cause;
-		
-		protected BenchData(ServiceBroker broker, CallOptions.Options opts, PrintWriter out, String action, Tree params,
-				long num) {
-			this.broker = broker;
-			this.opts = opts;
-			this.out = out;
-			this.action = action;
-			this.params = params;
-			this.num = num;
-			this.startTime = System.nanoTime();
+					// Synchronized start
+					Thread.sleep(delay);
+					runBench(broker, data);
+					r.resolve(toResult(broker, data));
+				} catch (Throwable cause) {
+					r.reject(cause);
+				} finally {
+					finished.run();
+				}
+			}, "bench-remote");
+			thread.setDaemon(true);
+			thread.start();
+		});
+	}
+
+	protected Tree toResult(ServiceBroker broker, BenchData data) {
+		Tree result = new Tree();
+		result.put("nodeID", broker.getNodeID());
+		result.put("description", data.description);
+		result.put("timestamp", System.currentTimeMillis());
+		result.put("requests", data.resCount.get());
+		result.put("errors", data.errorCount.get());
+		long duration = data.finishTime - data.startTime;
+		result.put("duration", duration);
+		result.put("reqPerSec", data.resCount.get() * 1000000000L / Math.max(1, duration));
+		result.put("rate", data.rate);
+		HistogramSnapshot snapshot = data.rate > 0 ? data.correctedHistogram.snapshot() : data.histogram.snapshot();
+		Tree latency = result.putMap("latency");
+		latency.put("mean", snapshot.getMean());
+		latency.put("min", snapshot.getMin());
+		latency.put("max", snapshot.getMax());
+		Tree percentiles = latency.putList("percentiles");
+		for (double percentile : PERCENTILES) {
+			Tree item = percentiles.addMap();
+			item.put("percentile", percentile);
+			item.put("value", snapshot.getValueAtPercentile(percentile));
+		}
+		if (!data.nodes.isEmpty()) {
+			Tree nodes = result.putList("nodes");
+			for (Map.Entry<String, NodeStats> entry : new TreeMap<>(data.nodes).entrySet()) {
+				NodeStats stats = entry.getValue();
+				HistogramSnapshot nodeSnapshot = stats.histogram.snapshot();
+				Tree node = nodes.addMap();
+				node.put("nodeID", entry.getKey());
+				node.put("requests", stats.resCount.get());
+				node.put("errors", stats.errorCount.get());
+				node.put("mean", nodeSnapshot.getMean());
+				node.put("p50", nodeSnapshot.getValueAtPercentile(50));
+				node.put("p99", nodeSnapshot.getValueAtPercentile(99));
+				node.put("max", nodeSnapshot.getMax());
+			}
+		}
+		long turnarounds = data.turnaroundCount.sum();
+		if (turnarounds > 0) {
+			Tree generator = result.putMap("generator");
+			generator.put("type", getGeneratorName(data));
+			generator.put("turnaround", data.turnaroundTime.sum() / turnarounds);
+		}
+		if (data.gcStart != null && data.gcEnd != null) {
+			GcSnapshot delta = data.gcEnd.minus(data.gcStart);
+			Tree gc = result.putMap("gc");
+			gc.put("pauses", delta.getCount());
+			gc.put("pauseTime", delta.getTime());
+			gc.put("allocatedJvm", delta.getAllocated());
 		}
+		if (data.warmupRequests > 0) {
+			result.put("warmupRequests", data.warmupRequests);
+			result.put("steadyTime", data.steadyTime);
+		}
+		result.put("histogram", Base64.getEncoder().encodeToString(data.histogram.snapshot().toBytes()));
+		if (data.rate > 0) {
+			result.put("corrected",
+					Base64.getEncoder().encodeToString(data.correctedHistogram.snapshot().toBytes()));
+		}
+		if (data.cause != null) {
+			result.put("error", String.valueOf(data.cause));
+		}
+		return result;
+	}
+
+	protected void sendScheduledRequests(ServiceBroker broker, BenchData data) {
+		if (data.ticker == null || data.finished.get()) {
+			return;
+		}
+
+		// Send all requests which are due (catch up if the scheduler was late)
+		long due = (System.nanoTime() - data.startTime) / data.interval + 1;
+		while (data.reqCount.get() < due) {
+			if (data.timeout.get() || (data.num > 0 && data.reqCount.get() >= data.num)) {
+
+				// Stop sending, wait for the pending responses
+				data.ticker.cancel(false);
+				if (data.resCount.get() >= data.reqCount.get()) {
+					finish(data);
+				}
+				return;
+			}
+			doRequest(broker, data, data.startTime + data.reqCount.get() * data.interval);
+		}
+	}
+
+	protected void doRequest(ServiceBroker broker, BenchData data) {
+		doRequest(broker, data, System.nanoTime());
+	}
+
+	protected void doRequest(ServiceBroker broker, BenchData data, long intendedTime) {
+		long seq = data.reqCount.getAndIncrement();
+		BenchTarget target = data.nextTarget();
+		Tree params = target.params;
+		if (target.template != null) {
+			params = generateParams(data, target.template, seq);
+		}
+
+		long startTime = System.nanoTime();
+		try {
+			broker.call(target.action, params, target.opts).then(res -> {
+				handleResponse(broker, data, target, respondingNode(broker, target, null), startTime, intendedTime,
+						null);
+			}).catchError(cause -> {
+				handleResponse(broker, data, target, respondingNode(broker, target, cause), startTime, intendedTime,
+						cause);
+			});
+		} catch (Exception err) {
+			handleResponse(broker, data, target, null, startTime, intendedTime, err);
+		}
+	}
+
+	/**
+	 * Node ID of the successful responses of balanced calls. The response
+	 * returned by the broker does not contain the sender node.
+	 */
+	protected static final String UNKNOWN_NODE = "unknown";
+
+	/**
+	 * Returns the node which sent the response (or the error). Errors contain
+	 * the nodeID of the failing node. A successful response is attributed to
+	 * the "nodeID" of the call, to the local node (if the broker has no
+	 * transporter), or to the "unknown" node.
+	 *
+	 * @return nodeID of the responding node
+	 */
+	protected String respondingNode(ServiceBroker broker, BenchTarget target, Throwable cause) {
+		if (cause != null) {
+			Throwable error = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause()
+					: cause;
+			String nodeID = error instanceof MoleculerError ? ((MoleculerError) error).getNodeID() : null;
+			return nodeID == null || nodeID.isEmpty() ? UNKNOWN_NODE : nodeID;
+		}
+		if (target.opts != null && target.opts.nodeID != null) {
+			return target.opts.nodeID;
+		}
+		if (broker.getConfig().getTransporter() == null) {
+			return broker.getNodeID();
+		}
+		return UNKNOWN_NODE;
+	}
+
+	protected Tree generateParams(BenchData data, PayloadTemplate template, long seq) {
+
+		// Measure the allocation of every 64th generation
+		long allocated = (seq & 63) == 0 ? Allocations.currentThread() : -1;
+		boolean sample = allocated >= 0;
+		long start = System.nanoTime();
+		Tree params = template.generate(seq);
+		data.generatorTime.add(System.nanoTime() - start);
+		data.generatorCount.increment();
+		if (sample) {
+			data.generatorAllocated.add(Allocations.currentThread() - allocated);
+			data.generatorSamples.increment();
+		}
+		return params;
+	}
+
+	protected void handleResponse(ServiceBroker broker, BenchData data, BenchTarget target, String nodeID,
+			long startTime, long intendedTime, Throwable cause) {
+		if (data.finished.get()) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		long duration = now - startTime;
+		data.histogram.record(duration);
+		long latency = duration;
+		if (nodeID != null) {
+			NodeStats stats = data.nodes.get(nodeID);
+			if (stats == null) {
+				stats = data.nodes.computeIfAbsent(nodeID, id -> new NodeStats());
+			}
+			stats.histogram.record(duration);
+			stats.resCount.incrementAndGet();
+			if (cause != null) {
+				stats.errorCount.incrementAndGet();
+			}
+		}
+		if (data.rate > 0) {
+
+			// Measured from the intended send time (coordinated omission)
+			duration = now - intendedTime;
+			data.correctedHistogram.record(duration);
+		}
+		if (target.histogram != null) {
+			target.histogram.record(duration);
+			target.resCount.incrementAndGet();
+		}
+
+		long count = data.resCount.incrementAndGet();
+		if ((cause != null || count % JFR_SAMPLING == 0) && JfrProfiler.isAvailable()) {
+			recordEvent(target, nodeID, latency, cause);
+		}
+		if (cause != null) {
+			if (target.histogram != null) {
+				target.errorCount.incrementAndGet();
+			}
+			if (data.errorCount.incrementAndGet() == 1) {
+				data.cause = cause;
+			}
+			Throwable type;
+			if (cause instanceof CompletionException) {
+				type = ((CompletionException) cause).getCause();
+			} else {
+				type = cause;
+			}
+			if (type instanceof ServiceNotFoundError || type instanceof ServiceNotAvailableError) {
+				stop(data);
+				return;
+			}
+		}
+
+		// Open-loop mode: finish when all sent requests are answered
+		if (data.rate > 0) {
+			if (data.ticker.isCancelled() && count >= data.reqCount.get()) {
+				finish(data);
+			}
+			return;
+		}
+
+		if (data.timeout.get() || (data.num > 0 && count >= data.num)) {
+			finish(data);
+			return;
+		}
+
+		// Virtual threads send the next request themselves
+		if (data.virtualThreads) {
+			return;
+		}
+
+		if (count % 100 > 0) {
+			resubmit(broker, data, now);
+		} else {
+			executor.execute(() -> {
+				resubmit(broker, data, now);
+			});
+		}
+	}
+
+	protected void resubmit(ServiceBroker broker, BenchData data, long completedAt) {
+		data.turnaroundTime.add(System.nanoTime() - completedAt);
+		data.turnaroundCount.increment();
+		doRequest(broker, data);
+	}
+
+	// --- VIRTUAL THREADS ---
+
+	/**
+	 * Starts "max" virtual threads, each calling the service in a blocking
+	 * loop. Unlike the callback-chained generator, this does not use the
+	 * broker's executor to keep the load going.
+	 */
+	protected void runVirtualThreads(ServiceBroker broker, BenchData data) throws InterruptedException {
+		ExecutorService threads = VirtualThreads.newExecutor();
+		try {
+			for (int i = 0; i < data.max; i++) {
+				threads.execute(() -> {
+					long[] completedAt = new long[1];
+					while (!data.finished.get() && !data.timeout.get()) {
+						if (data.num > 0 && data.reqCount.get() >= data.num) {
+							break;
+						}
+						if (completedAt[0] > 0) {
+							data.turnaroundTime.add(System.nanoTime() - completedAt[0]);
+							data.turnaroundCount.increment();
+						}
+						doBlockingRequest(broker, data, completedAt);
+					}
+				});
+			}
+		} finally {
+			threads.shutdown();
+		}
+		while (!threads.awaitTermination(10, TimeUnit.MILLISECONDS)) {
+			if (data.finished.get()) {
+				break;
+			}
+		}
+
+		// All threads stopped without a late response
+		finish(data);
+	}
+
+	/**
+	 * Every Nth successful response is recorded as a JFR event.
+	 */
+	protected static final int JFR_SAMPLING = 100;
+
+	protected void recordEvent(BenchTarget target, String nodeID, long latency, Throwable cause) {
+		BenchRequestEvent event = new BenchRequestEvent();
+		if (event.shouldCommit()) {
+			event.action = target.action;
+			event.node = nodeID;
+			event.latency = latency;
+			if (cause != null) {
+				Throwable error = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause()
+						: cause;
+				event.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+			}
+			event.commit();
+		}
+	}
+
+	protected void doBlockingRequest(ServiceBroker broker, BenchData data, long[] completedAt) {
+		long seq = data.reqCount.getAndIncrement();
+		BenchTarget target = data.nextTarget();
+		Tree params = target.params;
+		if (target.template != null) {
+			params = generateParams(data, target.template, seq);
+		}
+		long startTime = System.nanoTime();
+		Throwable cause = null;
+		try {
+			broker.call(target.action, params, target.opts).then(res -> {
+				completedAt[0] = System.nanoTime();
+			}).waitFor();
+		} catch (Throwable err) {
+			completedAt[0] = System.nanoTime();
+			cause = err;
+		}
+		handleResponse(broker, data, target, respondingNode(broker, target, cause), startTime, startTime, cause);
+	}
+
+	protected boolean stop(BenchData data) {
+		return stop(data, false);
+	}
+
+	/**
+	 * Stops sending requests and releases the waiting command thread (which
+	 * prints the report).
+	 *
+	 * @param data
+	 *            benchmark
+	 * @param completed
+	 *            finished by the time or count limit (not by an error)
+	 *
+	 * @return true if the benchmark was running
+	 */
+	protected boolean stop(BenchData data, boolean completed) {
+		if (!data.finished.compareAndSet(false, true)) {
+			return false;
+		}
+		data.finishTime = System.nanoTime();
+		data.gcEnd = GcSnapshot.take();
+		data.completed = completed;
+		if (data.timer != null) {
+			data.timer.cancel(true);
+		}
+		if (data.ticker != null) {
+			data.ticker.cancel(false);
+		}
+		if (data.reporter != null) {
+			data.reporter.cancel(false);
+		}
+		if (data.reportExecutor != null) {
+			data.reportExecutor.shutdown();
+		}
+		data.done.countDown();
+		return true;
+	}
+
+	protected void finish(BenchData data) {
+		stop(data, true);
+	}
+
+	protected void stopRecording(BenchData data) {
+		if (data.recording != null) {
+			try {
+				JfrProfiler.stop(data.recording, data.jfrFile);
+			} catch (Throwable cause) {
+				data.jfrError = cause;
+			}
+			data.recording = null;
+		}
+	}
+
+	// --- INTERVAL STATISTICS ---
+
+	protected void printInterval(BenchData data) {
+		synchronized (data) {
+			if (data.finished.get()) {
+				return;
+			}
+			PrintWriter out = data.out;
+			try {
+				long now = System.nanoTime();
+				long resCount = data.resCount.get();
+				long errorCount = data.errorCount.get();
+				long pending = data.reqCount.get() - resCount;
+				LatencyHistogram histogram = data.rate > 0 ? data.correctedHistogram : data.histogram;
+				HistogramSnapshot snapshot = histogram.snapshot();
+				HistogramSnapshot delta = snapshot.minus(data.lastSnapshot);
+				long elapsed = Math.max(1, now - data.lastIntervalTime);
+				long reqPerSec = (resCount - data.lastResCount) * 1000000000L / elapsed;
+
+				if (data.lastSnapshot == null) {
+					StringBuilder header = new StringBuilder(128);
+					appendColumn(header, GRAY, "  Time", 9);
+					appendColumn(header, null, "Req/sec", 13);
+					appendColumn(header, null, "Errors", 10);
+					appendColumn(header, null, "Pending", 10);
+					appendColumn(header, null, "GC pauses", 14);
+					header.append("p50 / p90 / p99 / max");
+					out.println(header.toString());
+				}
+				StringBuilder tmp = new StringBuilder(128);
+				long errors = errorCount - data.lastErrorCount;
+				appendColumn(tmp, null, "  " + (now - data.startTime) / 1000000000L + "s", 9);
+				appendColumn(tmp, WHITE, formatNumber(reqPerSec), 13);
+				appendColumn(tmp, errors > 0 ? YELLOW : GRAY, formatNumber(errors), 10);
+				appendColumn(tmp, GRAY, formatNumber(pending), 10);
+
+				// Mark intervals with GC pauses
+				GcSnapshot gc = GcSnapshot.take();
+				GcSnapshot gcDelta = gc.minus(data.lastGc);
+				data.lastGc = gc;
+				if (gcDelta.getCount() > 0) {
+					appendColumn(tmp, YELLOW, gcDelta.getCount() + " (" + gcDelta.getTime() + " ms)", 14);
+				} else {
+					appendColumn(tmp, GRAY, "-", 14);
+				}
+				if (delta.getTotalCount() > 0) {
+					tmp.append(formatNamoSec(delta.getValueAtPercentile(50))).append(" / ");
+					tmp.append(formatNamoSec(delta.getValueAtPercentile(90))).append(" / ");
+					tmp.append(formatNamoSec(delta.getValueAtPercentile(99))).append(" / ");
+					tmp.append(formatNamoSec(delta.getMax()));
+				} else {
+					tmp.append('-');
+				}
+				out.println(tmp.toString());
+				out.flush();
+				if (data.histlogFile != null) {
+					appendHistlog(data, delta, data.lastIntervalTime, now);
+				}
+
+				data.lastSnapshot = snapshot;
+				data.lastIntervalTime = now;
+				data.lastResCount = resCount;
+				data.lastErrorCount = errorCount;
+			} catch (Exception e) {
+				e.printStackTrace(out);
+			}
+		}
+	}
+
+	protected void printTargets(PrintWriter out, BenchData data, long total) {
+		TextTable table = new TextTable("Action", "Weight", "Requests", "Errors", "Req/sec", "Average", "p50",
+				"p99", "Maximum");
+		for (BenchTarget target : data.targets) {
+			HistogramSnapshot snapshot = target.histogram.snapshot();
+			long count = target.resCount.get();
+			table.addRow(target.action, Integer.toString(target.weight), formatNumber(count),
+					formatNumber(target.errorCount.get()), formatNumber(count * 1000000000L / Math.max(1, total)),
+					formatNamoSec(snapshot.getMean()), formatNamoSec(snapshot.getValueAtPercentile(50)),
+					formatNamoSec(snapshot.getValueAtPercentile(99)), formatNamoSec(snapshot.getMax()));
+		}
+		out.println(table);
+	}
+
+	protected void printProfile(BenchData data) {
+		if (data.jfrFile == null) {
+			return;
+		}
+		PrintWriter out = data.out;
+		out.println();
+		if (data.jfrError != null) {
+			out.println(YELLOW + "Unable to record JFR profile!");
+			out.println();
+			data.jfrError.printStackTrace(out);
+			return;
+		}
+		try {
+			out.println(GREEN + "Profile of the benchmark:");
+			out.println();
+			Profile.printSummary(out, data.jfrFile, 10);
+			out.println(GRAY + "Recording saved into \"" + data.jfrFile.toAbsolutePath() + "\".");
+		} catch (Exception e) {
+			e.printStackTrace(out);
+		}
+	}
+
+	protected void printGc(PrintWriter out, GcSnapshot gc, long requests) {
+		out.println("  GC and allocation (JVM-wide, not only the broker): ");
+		out.println("    GC pauses:          " + WHITE + formatNumber(gc.getCount()) + GRAY + " (total: "
+				+ formatNumber(gc.getTime()) + " ms)");
+		long allocated = gc.getAllocated();
+		if (allocated >= 0) {
+			out.println("    Allocated / req:    " + WHITE + formatNumber(allocated / Math.max(1, requests))
+					+ " bytes" + GRAY + " (JVM-wide)");
+			out.println("    Allocation rate:    " + WHITE
+					+ formatNumber(allocated * 1000000000L / Math.max(1, gc.getTimestamp()) / (1024 * 1024))
+					+ " MB/sec");
+		}
+	}
+
+	protected String getGeneratorName(BenchData data) {
+		return data.virtualThreads ? "virtual threads" : "callbacks";
+	}
+
+	protected void printNodes(PrintWriter out, BenchData data, long total) {
+		TextTable table = new TextTable("Node", "Requests", "Share", "Errors", "Req/sec", "Average", "p50", "p99",
+				"Maximum");
+		long sum = 0;
+		for (NodeStats stats : data.nodes.values()) {
+			sum += stats.resCount.get();
+		}
+		TreeMap<String, NodeStats> sorted = new TreeMap<>(data.nodes);
+		for (Map.Entry<String, NodeStats> entry : sorted.entrySet()) {
+			NodeStats stats = entry.getValue();
+			HistogramSnapshot snapshot = stats.histogram.snapshot();
+			long count = stats.resCount.get();
+			table.addRow(entry.getKey(), formatNumber(count), count * 100 / Math.max(1, sum) + "%",
+					formatNumber(stats.errorCount.get()), formatNumber(count * 1000000000L / Math.max(1, total)),
+					formatNamoSec(snapshot.getMean()), formatNamoSec(snapshot.getValueAtPercentile(50)),
+					formatNamoSec(snapshot.getValueAtPercentile(99)), formatNamoSec(snapshot.getMax()));
+		}
+		out.println(table);
+	}
+
+	protected void appendColumn(StringBuilder tmp, String color, String text, int width) {
+		if (color != null) {
+			tmp.append(color);
+		}
+		tmp.append(text);
+		printChars(tmp, ' ', Math.max(1, width - text.length()));
+	}
+
+	protected void printResult(BenchData data) {
+		synchronized (data) {
+			if (data.reporter != null) {
+				data.out.println();
+			}
+			printSummary(data);
+			saveResults(data);
+			printComparison(data);
+			printProfile(data);
+		}
+	}
+
+	protected void printSummary(BenchData data) {
+		PrintWriter out = data.out;
+		try {
+			long total = data.finishTime - data.startTime;
+			HistogramSnapshot snapshot = data.histogram.snapshot();
+			HistogramSnapshot corrected = data.rate > 0 ? data.correctedHistogram.snapshot() : null;
+			printLatencyReport(out, data.resCount.get(), data.errorCount.get(), total, data.rate, snapshot,
+					corrected);
+			if (data.targets.length > 1) {
+				out.println();
+				printTargets(out, data, total);
+			}
+			if (data.nodes.size() > 1) {
+				out.println();
+				printNodes(out, data, total);
+			}
+			if (data.warmupRequests > 0) {
+				out.println();
+				out.println("  Warmup (not included in results): ");
+				out.println("    " + WHITE + formatWarmup(data));
+			}
+			long generated = data.generatorCount.sum();
+			if (generated > 0) {
+				out.println();
+				out.println("  Parameter generation (not included in latency): ");
+				out.println("    Average time:       " + WHITE + formatNamoSec(data.generatorTime.sum() / generated));
+				long samples = data.generatorSamples.sum();
+				if (samples > 0) {
+					out.println("    Allocated / call:   " + WHITE
+							+ formatNumber(data.generatorAllocated.sum() / samples) + " bytes");
+				}
+			}
+			if (data.gcStart != null && data.gcEnd != null) {
+				out.println();
+				printGc(out, data.gcEnd.minus(data.gcStart), data.resCount.get());
+			}
+			long turnarounds = data.turnaroundCount.sum();
+			if (turnarounds > 0) {
+				out.println();
+				out.println("  Load generator (" + getGeneratorName(data) + "): ");
+				out.println("    Turnaround / call:  " + WHITE + formatNamoSec(data.turnaroundTime.sum() / turnarounds)
+						+ GRAY + " (from a response to the next request)");
+			}
+			if (data.cause != null) {
+				out.println();
+				out.println(YELLOW + "Trace of the first faulty response:");
+				out.println();
+				data.cause.printStackTrace(out);
+			}
+		} catch (Exception e) {
+			e.printStackTrace(out);
+		}
+	}
+
+	protected void printLatencyReport(PrintWriter out, long requests, long errors, long total, long rate,
+			HistogramSnapshot snapshot, HistogramSnapshot corrected) {
+		BigDecimal errorCount = new BigDecimal(errors);
+		BigDecimal resCount = new BigDecimal(Math.max(1, requests));
+		BigDecimal sumTime = new BigDecimal(snapshot.getSum());
+		BigDecimal totalTime = new BigDecimal(Math.max(1, total));
+
+		BigDecimal nano = new BigDecimal(1000000000);
+		BigDecimal reqPerSec = nano.multiply(resCount).divide(totalTime, RoundingMode.HALF_UP);
+		long reqPer = Long.parseLong(reqPerSec.toBigInteger().toString());
+
+		BigDecimal duration = sumTime.divide(resCount, RoundingMode.HALF_UP);
+		long dur = Long.parseLong(duration.toBigInteger().toString());
+		BigDecimal inSec = duration.divide(nano);
+
+		String errStr;
+		if (errorCount.compareTo(BigDecimal.ZERO) == 1) {
+			String percent = errorCount.multiply(new BigDecimal(100)).divide(resCount, RoundingMode.HALF_UP)
+					.toBigInteger().toString();
+			errStr = formatNumber(errors) + " error(s) " + percent + "%";
+		} else {
+			errStr = "0 error";
+		}
+		out.println(GREEN + "Benchmark results:");
+		out.println();
+		out.println(
+				"  " + WHITE + formatNumber(requests) + " requests in " + formatNamoSec(total) + ", " + GRAY + errStr);
+		out.println();
+		out.println("  Requests per second: " + WHITE + formatNumber(reqPer));
+		if (rate > 0) {
+			out.println("  Target request rate: " + WHITE + formatNumber(rate));
+		}
+		out.println();
+		out.println("  Latency: ");
+		out.println("    Average: " + WHITE + formatNamoSec(dur) + " (" + inSec.toPlainString() + " second)");
+		if (snapshot.getTotalCount() > 0) {
+			out.println("    Minimum: " + WHITE + formatNamoSec(snapshot.getMin()));
+			out.println("    Maximum: " + WHITE + formatNamoSec(snapshot.getMax()));
+			out.println();
+			if (corrected != null) {
+				printPercentiles(out, "Percentiles (from the intended send time)", corrected);
+				out.println();
+				printPercentiles(out, "Percentiles (uncorrected)", snapshot);
+				out.println();
+				printDistribution(out, corrected);
+			} else {
+				printPercentiles(out, "Percentiles", snapshot);
+				out.println();
+				printDistribution(out, snapshot);
+			}
+		}
+	}
+
+	// --- PERCENTILES AND DISTRIBUTION CHART ---
+
+	protected static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	protected static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9", "p99.99" };
+
+	protected void printPercentiles(PrintWriter out, String title, HistogramSnapshot snapshot) {
+		out.println("  " + title + ": ");
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			StringBuilder tmp = new StringBuilder(64);
+			tmp.append("    ").append(PERCENTILE_NAMES[i]).append(':');
+			printChars(tmp, ' ', 12 - tmp.length());
+			tmp.append(WHITE).append(formatNamoSec(snapshot.getValueAtPercentile(PERCENTILES[i])));
+			out.println(tmp.toString());
+		}
+	}
+
+	protected void printDistribution(PrintWriter out, HistogramSnapshot snapshot) {
+		long min = snapshot.getMin();
+		long max = snapshot.getMax();
+		int rows = max > min ? 12 : 1;
+
+		// Logarithmic scale between the minimum and the maximum
+		long[] limits = new long[rows + 1];
+		double ratio = Math.pow((double) Math.max(max, 1) / Math.max(min, 1), 1d / rows);
+		limits[0] = min;
+		for (int i = 1; i < rows; i++) {
+			limits[i] = Math.max(limits[i - 1] + 1, (long) (Math.max(min, 1) * Math.pow(ratio, i)));
+		}
+		limits[rows] = max + 1;
+
+		long[] counts = new long[rows];
+		String[] labels = new String[rows];
+		long maxCount = 1;
+		int labelWidth = 0;
+		for (int i = 0; i < rows; i++) {
+			counts[i] = snapshot.getCountBetween(limits[i], limits[i + 1]);
+			maxCount = Math.max(maxCount, counts[i]);
+			labels[i] = formatNamoSec(limits[i]) + " - " + formatNamoSec(limits[i + 1] - 1);
+			labelWidth = Math.max(labelWidth, labels[i].length());
+		}
+		out.println("  Distribution: ");
+		long total = Math.max(1, snapshot.getTotalCount());
+		for (int i = 0; i < rows; i++) {
+			StringBuilder tmp = new StringBuilder(128);
+			tmp.append("    ").append(labels[i]);
+			printChars(tmp, ' ', labelWidth - labels[i].length() + 2);
+			tmp.append(GREEN);
+			int bar = (int) (40 * counts[i] / maxCount);
+			if (bar == 0 && counts[i] > 0) {
+				bar = 1;
+			}
+			printChars(tmp, '|', bar);
+			printChars(tmp, ' ', 41 - bar);
+			tmp.append(GRAY).append(formatNumber(counts[i])).append(" (").append(100 * counts[i] / total)
+					.append("%)");
+			out.println(tmp.toString());
+		}
+	}
+
+	// --- EXPORT AND BASELINE COMPARISON ---
+
+	protected static final String[] CSV_COLUMNS = { "timestamp", "description", "requests", "errors",
+			"duration_ns", "req_per_sec", "mean_ns", "min_ns", "p50_ns", "p90_ns", "p99_ns", "p99.9_ns", "p99.99_ns",
+			"max_ns" };
+
+	protected void saveResults(BenchData data) {
+		PrintWriter out = data.out;
+		try {
+			if (data.outFile == null && data.csvFile == null && data.histlogFile == null) {
+				return;
+			}
+			Tree result = toResult(data.broker, data);
+			out.println();
+			if (data.outFile != null) {
+				writeFile(data.outFile, result.toString("json", true), false);
+				out.println(GRAY + "Results saved into \"" + data.outFile + "\".");
+			}
+			if (data.csvFile != null) {
+				StringBuilder csv = new StringBuilder(256);
+				if (!new File(data.csvFile).isFile()) {
+					appendCsvLine(csv, CSV_COLUMNS);
+				}
+				Tree latency = result.get("latency");
+				String[] row = new String[CSV_COLUMNS.length];
+				row[0] = String.valueOf(result.get("timestamp", 0L));
+				row[1] = data.description;
+				row[2] = String.valueOf(result.get("requests", 0L));
+				row[3] = String.valueOf(result.get("errors", 0L));
+				row[4] = String.valueOf(result.get("duration", 0L));
+				row[5] = String.valueOf(result.get("reqPerSec", 0L));
+				row[6] = String.valueOf(latency.get("mean", 0L));
+				row[7] = String.valueOf(latency.get("min", 0L));
+				int i = 8;
+				for (Tree percentile : latency.get("percentiles")) {
+					row[i++] = String.valueOf(percentile.get("value", 0L));
+				}
+				row[i] = String.valueOf(latency.get("max", 0L));
+				appendCsvLine(csv, row);
+				writeFile(data.csvFile, csv.toString(), true);
+				out.println(GRAY + "Results added to \"" + data.csvFile + "\".");
+			}
+			if (data.histlogFile != null) {
+				if (data.histlogIntervals == 0) {
+
+					// No interval reports (the whole benchmark is one interval)
+					HistogramSnapshot snapshot = data.rate > 0 ? data.correctedHistogram.snapshot()
+							: data.histogram.snapshot();
+					appendHistlog(data, snapshot, data.startTime, data.finishTime);
+				}
+				if (data.histlogFile != null) {
+					out.println(GRAY + "Histograms saved into \"" + data.histlogFile + "\".");
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace(out);
+		}
+	}
+
+	/**
+	 * Default extension of the histogram logs. The histograms are stored in
+	 * the format of HistogramSnapshot (not in the format of HdrHistogram).
+	 */
+	protected static final String HISTLOG_EXTENSION = ".histlog";
+
+	/**
+	 * Writes the header of the histogram log (at the start of the measured
+	 * run). The interval lines are appended by "appendHistlog".
+	 */
+	protected void startHistlog(BenchData data) {
+		StringBuilder log = new StringBuilder(512);
+		log.append("#[Histogram log of bench ").append(data.description).append("]\n");
+		log.append("#[Histograms are Base64-encoded HistogramSnapshot.toBytes() values]\n");
+		log.append("#[StartTime: ").append(formatSeconds(data.startTimestamp * 1000000L)).append("]\n");
+		log.append("\"start_sec\",\"length_sec\",\"max_sec\",\"snapshot\"\n");
+		writeHistlog(data, log.toString(), false);
+	}
+
+	/**
+	 * Appends the histogram of an interval to the log file (the intervals are
+	 * not kept in memory).
+	 */
+	protected void appendHistlog(BenchData data, HistogramSnapshot snapshot, long from, long to) {
+		StringBuilder line = new StringBuilder(1024);
+		line.append(formatSeconds(from - data.startTime)).append(',');
+		line.append(formatSeconds(to - from)).append(',');
+		line.append(formatSeconds(snapshot.getMax())).append(',');
+		line.append(Base64.getEncoder().encodeToString(snapshot.toBytes())).append('\n');
+		writeHistlog(data, line.toString(), true);
+		data.histlogIntervals++;
+	}
+
+	protected void writeHistlog(BenchData data, String content, boolean append) {
+		String file = data.histlogFile;
+		if (file == null) {
+			return;
+		}
+		try {
+			writeFile(file, content, append);
+		} catch (Exception cause) {
+
+			// Stop logging (eg. disk full)
+			data.histlogFile = null;
+			data.out.println(YELLOW + "Unable to write histogram log \"" + file + "\": " + cause);
+		}
+	}
+
+	protected String formatSeconds(long nanos) {
+		return String.format(Locale.US, "%.3f", nanos / 1000000000d);
+	}
+
+	protected void appendCsvLine(StringBuilder csv, String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				csv.append(',');
+			}
+			String value = values[i] == null ? "" : values[i];
+			if (value.indexOf(',') > -1 || value.indexOf('"') > -1) {
+				csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+			} else {
+				csv.append(value);
+			}
+		}
+		csv.append('\n');
+	}
+
+	protected void writeFile(String path, String content, boolean append) throws Exception {
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(path, append);
+			fos.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				} catch (Exception ignored) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints the differences between the current results and the baseline
+	 * (saved by "--out"). The significance of the latency change is checked by
+	 * a Mann-Whitney U test on the two histograms.
+	 */
+	protected void printComparison(BenchData data) {
+		if (data.baseline == null) {
+			return;
+		}
+		PrintWriter out = data.out;
+		try {
+			Tree baseline = data.baseline;
+			String description = baseline.get("description", "");
+			out.println();
+			out.println(GREEN + "Comparison with \"" + data.baselineFile + "\":");
+			out.println();
+			if (!data.description.equals(description)) {
+				out.println(YELLOW + "  Warning: the baseline was measured with " + description + "!");
+				out.println();
+			}
+
+			// Compare the corrected histograms if both runs are rate-limited
+			String key = data.rate > 0 && baseline.get("corrected") != null ? "corrected" : "histogram";
+			HistogramSnapshot before = HistogramSnapshot
+					.fromBytes(Base64.getDecoder().decode(baseline.get(key, "")));
+			HistogramSnapshot after = "corrected".equals(key) ? data.correctedHistogram.snapshot()
+					: data.histogram.snapshot();
+
+			TextTable table = new TextTable("", "Baseline", "Current", "Delta");
+			long duration = Math.max(1, data.finishTime - data.startTime);
+			long reqPerSec = data.resCount.get() * 1000000000L / duration;
+			long baseReqPerSec = baseline.get("reqPerSec", 0L);
+			table.addRow("Req/sec", formatNumber(baseReqPerSec), formatNumber(reqPerSec),
+					formatDelta(baseReqPerSec, reqPerSec));
+			table.addRow("Average", formatNamoSec(before.getMean()), formatNamoSec(after.getMean()),
+					formatDelta(before.getMean(), after.getMean()));
+			for (int i = 0; i < PERCENTILES.length; i++) {
+				long a = before.getValueAtPercentile(PERCENTILES[i]);
+				long b = after.getValueAtPercentile(PERCENTILES[i]);
+				table.addRow(PERCENTILE_NAMES[i], formatNamoSec(a), formatNamoSec(b), formatDelta(a, b));
+			}
+			table.addRow("Maximum", formatNamoSec(before.getMax()), formatNamoSec(after.getMax()),
+					formatDelta(before.getMax(), after.getMax()));
+			long turnarounds = data.turnaroundCount.sum();
+			long baseTurnaround = baseline.get("generator.turnaround", 0L);
+			if (turnarounds > 0 && baseTurnaround > 0) {
+				long turnaround = data.turnaroundTime.sum() / turnarounds;
+				String types = baseline.get("generator.type", "") + " / " + getGeneratorName(data);
+				table.addRow("Turnaround (" + types + ")", formatNamoSec(baseTurnaround), formatNamoSec(turnaround),
+						formatDelta(baseTurnaround, turnaround));
+			}
+			out.println(table);
+			out.println();
+
+			double z = after.rankSumZ(before);
+			String score = " (Mann-Whitney z = " + String.format(Locale.US, "%.2f", z) + ")";
+			if (Math.abs(z) > 1.96) {
+				out.println((z > 0 ? YELLOW + "  Latency is significantly HIGHER than the baseline"
+						: GREEN + "  Latency is significantly LOWER than the baseline") + GRAY + score);
+			} else {
+				out.println(GRAY + "  No significant latency difference" + score);
+			}
+		} catch (Exception e) {
+			e.printStackTrace(out);
+		}
+	}
+
+	protected String formatDelta(long before, long after) {
+		if (before == 0) {
+			return "-";
+		}
+		return String.format(Locale.US, "%+.1f%%", (after - before) * 100d / before);
+	}
+
+	// --- WORKLOAD AND RESULT LOADER ---
+
+	/**
+	 * Loads a JSON or YAML file (workload or saved results).
+	 *
+	 * @param path
+	 *            path of the file
+	 *
+	 * @return content of the file
+	 *
+	 * @throws Exception
+	 *             if the file is missing or invalid
+	 */
+	protected Tree loadFile(String path) throws Exception {
+		if (path == null || path.isEmpty()) {
+			throw new IllegalArgumentException("Missing file name!");
+		}
+		String lower = path.toLowerCase();
+		String format = lower.endsWith(".yml") || lower.endsWith(".yaml") ? "yaml" : "json";
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(path);
+			return CommonUtils.readTree(in, format);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (Exception ignored) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a weighted action mix. Sample of JSON format:<br>
+	 *
+	 * <pre>
+	 * {
+	 *   "actions": [
+	 *     { "action": "math.add", "weight": 3, "params": { "a": 1, "b": 2 } },
+	 *     { "action": "users.find", "weight": 1, "nodeID": "node2", "retry": 1, "timeout": 2.5 }
+	 *   ]
+	 * }
+	 * </pre>
+	 *
+	 * The "timeout" is in seconds. Missing "nodeID" and "retry" values are
+	 * taken from the command line.
+	 *
+	 * @param workload
+	 *            content of the workload file
+	 * @param retry
+	 *            default number of retries
+	 * @param nodeID
+	 *            default nodeID (or empty String)
+	 *
+	 * @return array of targets
+	 *
+	 * @throws Exception
+	 *             if the workload is invalid
+	 */
+	protected BenchTarget[] parseWorkload(Tree workload, int retry, String nodeID) throws Exception {
+		Tree actions = workload.isEnumeration() ? workload : workload.get("actions");
+		if (actions == null || actions.isNull() || actions.isEmpty()) {
+			throw new IllegalArgumentException("The workload does not contain any actions!");
+		}
+		LinkedList<BenchTarget> list = new LinkedList<>();
+		for (Tree config : actions) {
+			String action = config.get("action", "");
+			if (action == null || action.isEmpty()) {
+				throw new IllegalArgumentException("Missing \"action\" property: " + config);
+			}
+			int weight = config.get("weight", 1);
+			if (weight < 1) {
+				continue;
+			}
+			Tree params = config.get("params");
+			params = params == null ? new Tree() : params.clone();
+			params.getMeta().put(META_REPL_HEADER, true);
+			CallOptions.Options opts = CallOptions.retryCount(config.get("retry", retry));
+			String targetNodeID = config.get("nodeID", nodeID);
+			if (targetNodeID != null && !targetNodeID.isEmpty()) {
+				opts = opts.nodeID(targetNodeID);
+			}
+			double timeout = config.get("timeout", 0d);
+			if (timeout > 0) {
+				opts = opts.timeout((long) (timeout * 1000));
+			}
+			BenchTarget target = new BenchTarget(action, weight, params, opts);
+			target.histogram = new LatencyHistogram();
+			list.addLast(target);
+		}
+		if (list.isEmpty()) {
+			throw new IllegalArgumentException("All weights are zero!");
+		}
+		BenchTarget[] targets = new BenchTarget[list.size()];
+		list.toArray(targets);
+		return targets;
+	}
+
+	protected static final class BenchData {
+
+		protected long startTime;
+		protected long finishTime;
+
+		protected long time; // millis
+		protected int max;
+		protected long reportInterval;
+		protected String description;
+		protected boolean quiet;
+
+		protected long warmupTime; // millis
+		protected long warmupCount;
+		protected long warmupRequests;
+		protected long warmupDuration;
+		protected long steadyTime;
+
+		protected final long startTimestamp = System.currentTimeMillis();
+
+		// Statistics by responding node
+		protected final ConcurrentHashMap<String, NodeStats> nodes = new ConcurrentHashMap<>();
+
+		// Output files and baseline
+		protected String outFile;
+		protected String csvFile;
+		protected volatile String histlogFile;
+		protected volatile int histlogIntervals;
+		protected Tree baseline;
+		protected String baselineFile;
+
+		// Only used in warmup mode
+		protected double[] windowRates;
+		protected double[] windowLatencies;
+		protected int windowCount;
+
+		protected final ServiceBroker broker;
+		protected final PrintWriter out;
+		protected final BenchTarget[] targets;
+		protected final int[] weights;
+		protected final long num;
+		protected final long rate;
+		protected final long interval;
+
+		protected final AtomicLong reqCount = new AtomicLong();
+		protected final AtomicLong resCount = new AtomicLong();
+		protected final AtomicLong errorCount = new AtomicLong();
+
+		protected final LongAdder generatorTime = new LongAdder();
+		protected final LongAdder generatorCount = new LongAdder();
+		protected final LongAdder generatorAllocated = new LongAdder();
+		protected final LongAdder generatorSamples = new LongAdder();
+
+		// Time from a response to the next request (generator overhead)
+		protected boolean virtualThreads;
+		protected final LongAdder turnaroundTime = new LongAdder();
+		protected final LongAdder turnaroundCount = new LongAdder();
+
+		protected final LatencyHistogram histogram = new LatencyHistogram();
+		protected final LatencyHistogram correctedHistogram;
+
+		protected volatile ScheduledFuture<?> timer;
+		protected volatile ScheduledFuture<?> ticker;
+		protected volatile ScheduledFuture<?> reporter;
+		protected volatile ScheduledExecutorService reportExecutor;
+
+		protected HistogramSnapshot lastSnapshot;
+		protected GcSnapshot lastGc;
+
+		// JFR profiling
+		protected Path jfrFile;
+		protected Recording recording;
+		protected Throwable jfrError;
+		protected GcSnapshot gcStart;
+		protected volatile GcSnapshot gcEnd;
+		protected long lastIntervalTime;
+		protected long lastResCount;
+		protected long lastErrorCount;
+
+		protected final AtomicBoolean timeout = new AtomicBoolean();
+		protected final AtomicBoolean finished = new AtomicBoolean();
+		protected final CountDownLatch done = new CountDownLatch(1);
+		protected volatile boolean completed;
+
+		protected Throwable cause;
+		
+		protected BenchData(ServiceBroker broker, PrintWriter out, BenchTarget[] targets, long num, long rate) {
+			this.broker = broker;
+			this.out = out;
+			this.targets = targets;
+			this.num = num;
+			this.rate = rate;
+			this.interval = rate > 0 ? Math.max(1, 1000000000L / rate) : 0;
+			this.correctedHistogram = rate > 0 ? new LatencyHistogram() : null;
+			this.startTime = System.nanoTime();
+
+			// Cumulated weights
+			weights = new int[targets.length];
+			int sum = 0;
+			for (int i = 0; i < targets.length; i++) {
+				sum += targets[i].weight;
+				weights[i] = sum;
+			}
+		}
+
+		protected BenchTarget nextTarget() {
+			if (targets.length == 1) {
+				return targets[0];
+			}
+			int r = ThreadLocalRandom.current().nextInt(weights[weights.length - 1]);
+			int i = Arrays.binarySearch(weights, r + 1);
+			return targets[i < 0 ? -i - 1 : i];
+		}
+
+	}
+
+	protected static final class BenchTarget {
+
+		protected final String action;
+		protected final int weight;
+		protected final Tree params;
+		protected final CallOptions.Options opts;
+
+		// Only used in workload mode
+		protected LatencyHistogram histogram;
+
+		// Only used if the params contain ${...} placeholders
+		protected PayloadTemplate template;
+
+		protected final AtomicLong resCount = new AtomicLong();
+		protected final AtomicLong errorCount = new AtomicLong();
+
+		protected BenchTarget(String action, int weight, Tree params, CallOptions.Options opts) {
+			this.action = action;
+			this.weight = weight;
+			this.params = params;
+			this.opts = opts;
+		}
+
+	}
+
+	protected static final class NodeStats {
+
+		protected final LatencyHistogram histogram = new LatencyHistogram();
+		protected final AtomicLong resCount = new AtomicLong();
+		protected final AtomicLong errorCount = new AtomicLong();
 
 	}
 
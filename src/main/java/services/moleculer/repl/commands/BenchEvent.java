@@ -0,0 +1,296 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.commands;
+
+import static services.moleculer.repl.ColorWriter.GRAY;
+import static services.moleculer.repl.ColorWriter.GREEN;
+import static services.moleculer.repl.ColorWriter.WHITE;
+import static services.moleculer.repl.ColorWriter.YELLOW;
+import static services.moleculer.util.CommonUtils.formatNamoSec;
+import static services.moleculer.util.CommonUtils.formatNumber;
+import static services.moleculer.util.CommonUtils.getNodeInfos;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.concurrent.locks.LockSupport;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import services.moleculer.ServiceBroker;
+import services.moleculer.context.CallOptions;
+import services.moleculer.repl.Command;
+import services.moleculer.repl.TextTable;
+import services.moleculer.repl.bench.EventCounter;
+import services.moleculer.repl.bench.HistogramSnapshot;
+import services.moleculer.repl.bench.LatencyHistogram;
+import services.moleculer.service.Name;
+
+/**
+ * Measures the throughput of event publishing. If the "EventCounter" service
+ * is installed on the listener nodes, it also measures the end-to-end delivery
+ * latency and the number of lost events. Sample of usage:<br>
+ * <br>
+ * bench-event user.created --mode broadcast --rate 1000 --time 10
+ * {"a":3,"b":false}
+ */
+@Name("bench-event")
+public class BenchEvent extends Command {
+
+	public BenchEvent() {
+		option("mode <emit|broadcast|local>", "publishing method (default is emit)");
+		option("num <number>", "number of events");
+		option("time <time>", "time of bench (eg. 10, 30s, 5m)");
+		option("rate <number>", "target rate (events / second, default is unlimited)");
+		option("drain <time>", "wait for late events before collecting (default is 1s)");
+	}
+
+	@Override
+	public String getDescription() {
+		return "Benchmark event publishing";
+	}
+
+	@Override
+	public String getUsage() {
+		return "bench-event <eventName> [jsonPayload]";
+	}
+
+	@Override
+	public int getNumberOfRequiredParameters() {
+		return 1;
+	}
+
+	@Override
+	public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) throws Exception {
+
+		// Parse parameters
+		String name = parameters[0];
+		Collection<String> knownParams = Arrays.asList(new String[] { "mode", "num", "time", "rate", "drain" });
+		Tree flags = parseFlags(1, parameters, knownParams);
+		String mode = flags.get("mode", "emit").toLowerCase();
+		if (!"emit".equals(mode) && !"broadcast".equals(mode) && !"local".equals(mode)) {
+			out.println("Invalid mode (" + mode + ")! Valid modes are \"emit\", \"broadcast\" and \"local\".");
+			return;
+		}
+		long num = flags.get("num", 0L);
+		long time = parseMillis(flags.get("time", ""));
+		long rate = flags.get("rate", 0L);
+		long drain = parseMillis(flags.get("drain", "1s"));
+		if (num < 1 && time < 1) {
+			time = 5000;
+		}
+		Tree payload = getPayload(flags.get("lastIndex", 0) + 1, parameters);
+		if (!payload.isMap()) {
+			Tree wrapper = new Tree();
+			wrapper.putObject("value", payload.asObject());
+			payload = wrapper;
+		}
+
+		String msg = num > 0 ? num + " times" : "for " + formatNamoSec(time * 1000000L);
+		if (rate > 0) {
+			msg += " at " + formatNumber(rate) + " events/sec";
+		}
+		out.println(YELLOW + ">> Publishing '" + name + "' (" + mode + ") " + msg + " with payload: "
+				+ payload.toString("colorized-json", false));
+		out.println();
+		out.flush();
+
+		// Publish events
+		String id = broker.getNodeID() + '-' + Long.toHexString(System.nanoTime());
+		LatencyHistogram publishTimes = new LatencyHistogram(1);
+		long interval = rate > 0 ? Math.max(1, 1000000000L / rate) : 0;
+		long startTime = System.nanoTime();
+		long endTime = time > 0 ? startTime + time * 1000000L : Long.MAX_VALUE;
+		long sent = 0;
+		long errors = 0;
+		Throwable cause = null;
+		long now = startTime;
+		while ((num < 1 || sent < num) && now < endTime) {
+			if (interval > 0) {
+				long delay = startTime + sent * interval - now;
+				if (delay > 0) {
+					LockSupport.parkNanos(delay);
+				}
+			}
+			Tree event = payload.clone();
+			Tree bench = event.putMap(EventCounter.BENCH_PROPERTY);
+			bench.put("id", id);
+			bench.put("seq", sent);
+			bench.put("time", EventCounter.currentTimeMicros());
+			long start = System.nanoTime();
+			try {
+				if ("broadcast".equals(mode)) {
+					broker.broadcast(name, event);
+				} else if ("local".equals(mode)) {
+					broker.broadcastLocal(name, event);
+				} else {
+					broker.emit(name, event);
+				}
+			} catch (Throwable err) {
+				errors++;
+				if (cause == null) {
+					cause = err;
+				}
+			}
+			now = System.nanoTime();
+			publishTimes.record(now - start);
+			sent++;
+		}
+		long duration = Math.max(1, now - startTime);
+
+		// Print publisher-side results
+		HistogramSnapshot snapshot = publishTimes.snapshot();
+		out.println(GREEN + "Publisher:");
+		out.println();
+		out.println("  " + WHITE + formatNumber(sent) + " events in " + formatNamoSec(duration) + ", " + GRAY
+				+ formatNumber(errors) + " error(s)");
+		out.println();
+		out.println("  Events per second:  " + WHITE + formatNumber(sent * 1000000000L / duration));
+		if (rate > 0) {
+			out.println("  Target event rate:  " + WHITE + formatNumber(rate));
+		}
+		out.println();
+		printLatencies(out, "Time of publishing (per event)", snapshot);
+		if (cause != null) {
+			out.println();
+			out.println(YELLOW + "Trace of the first error:");
+			out.println();
+			cause.printStackTrace(out);
+		}
+		out.flush();
+
+		// Wait for late events
+		if (drain > 0) {
+			Thread.sleep(drain);
+		}
+
+		// Collect results of the counters
+		collectResults(broker, out, id, mode, sent);
+	}
+
+	protected void collectResults(ServiceBroker broker, PrintWriter out, String id, String mode, long sent)
+			throws Exception {
+
+		// Find nodes with EventCounter service
+		LinkedList<String> nodeIDs = new LinkedList<>();
+		Tree infos = getNodeInfos(broker, broker.getConfig().getTransporter());
+		for (Tree info : infos) {
+			Tree services = info.get("services");
+			if (services == null || services.isNull()) {
+				continue;
+			}
+			for (Tree service : services) {
+				if (EventCounter.SERVICE_NAME.equals(service.get("name", ""))) {
+					nodeIDs.add(info.getName());
+					break;
+				}
+			}
+		}
+		out.println();
+		if (nodeIDs.isEmpty()) {
+			out.println(GRAY + "Install the \"" + EventCounter.class.getName()
+					+ "\" service on the listener nodes to measure delivery latency and loss.");
+			return;
+		}
+
+		// Query counters
+		Tree request = new Tree();
+		request.put("id", id);
+		Promise[] promises = new Promise[nodeIDs.size()];
+		int i = 0;
+		for (String nodeID : nodeIDs) {
+			promises[i++] = broker.call(EventCounter.SERVICE_NAME + ".results", request,
+					CallOptions.nodeID(nodeID).timeout(10000));
+		}
+
+		// "emit" delivers each event to one listener (of the group)
+		boolean balanced = "emit".equals(mode);
+		String localNodeID = broker.getNodeID();
+		TextTable table = new TextTable("Node", "Received", balanced ? "Share" : "Lost", "Duplicates", "Average",
+				"p50", "p99", "Maximum");
+		HistogramSnapshot merged = null;
+		long received = 0;
+		i = 0;
+		for (String nodeID : nodeIDs) {
+			try {
+				Tree rsp = promises[i++].waitFor(10000);
+				long count = rsp.get("received", 0L);
+				received += count;
+				String lost;
+				if (balanced) {
+					lost = count * 100 / Math.max(1, sent) + "%";
+				} else {
+					long expected = "local".equals(mode) && !localNodeID.equals(nodeID) ? 0 : sent;
+					lost = formatNumber(Math.max(0, expected - count));
+				}
+				String histogram = rsp.get("histogram", "");
+				if (histogram == null || histogram.isEmpty()) {
+					table.addRow(nodeID, "0", lost, formatNumber(rsp.get("duplicates", 0L)), "-", "-", "-", "-");
+					continue;
+				}
+				HistogramSnapshot snapshot = HistogramSnapshot.fromBytes(Base64.getDecoder().decode(histogram));
+				merged = snapshot.add(merged);
+				table.addRow(nodeID, formatNumber(count), lost, formatNumber(rsp.get("duplicates", 0L)),
+						formatNamoSec(snapshot.getMean()), formatNamoSec(snapshot.getValueAtPercentile(50)),
+						formatNamoSec(snapshot.getValueAtPercentile(99)), formatNamoSec(snapshot.getMax()));
+			} catch (Exception cause) {
+				table.addRow(nodeID, "FAILED", "", "", "", "", "", "");
+			}
+		}
+		out.println(GREEN + "Listeners (" + EventCounter.SERVICE_NAME + "):");
+		out.println();
+		out.println(table);
+		if (balanced) {
+			out.println();
+			out.println("  Delivered events:   " + WHITE + formatNumber(received) + " / " + formatNumber(sent) + GRAY
+					+ " (lost: " + formatNumber(Math.max(0, sent - received)) + ")");
+		}
+		if (merged != null) {
+			out.println();
+			printLatencies(out, "End-to-end latency", merged);
+		}
+	}
+
+	protected void printLatencies(PrintWriter out, String title, HistogramSnapshot snapshot) {
+		out.println("  " + title + ": ");
+		if (snapshot.getTotalCount() < 1) {
+			out.println("    -");
+			return;
+		}
+		out.println("    Average:   " + WHITE + formatNamoSec(snapshot.getMean()));
+		for (int i = 0; i < Bench.PERCENTILES.length; i++) {
+			StringBuilder tmp = new StringBuilder(64);
+			tmp.append("    ").append(Bench.PERCENTILE_NAMES[i]).append(':');
+			printChars(tmp, ' ', 15 - tmp.length());
+			tmp.append(WHITE).append(formatNamoSec(snapshot.getValueAtPercentile(Bench.PERCENTILES[i])));
+			out.println(tmp.toString());
+		}
+		out.println("    Maximum:   " + WHITE + formatNamoSec(snapshot.getMax()));
+	}
+
+}
@@ -0,0 +1,349 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.commands;
+
+import static services.moleculer.repl.ColorWriter.GRAY;
+import static services.moleculer.repl.ColorWriter.GREEN;
+import static services.moleculer.repl.ColorWriter.WHITE;
+import static services.moleculer.repl.ColorWriter.YELLOW;
+import static services.moleculer.util.CommonUtils.formatNamoSec;
+import static services.moleculer.util.CommonUtils.formatNumber;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import services.moleculer.ServiceBroker;
+import services.moleculer.context.CallOptions;
+import services.moleculer.repl.Command;
+import services.moleculer.repl.bench.EventCounter;
+import services.moleculer.repl.bench.HistogramSnapshot;
+import services.moleculer.repl.bench.LatencyHistogram;
+import services.moleculer.repl.bench.StreamSink;
+import services.moleculer.service.Name;
+import services.moleculer.stream.PacketStream;
+
+/**
+ * Measures the throughput of streams. Without action name, the streams are sent
+ * to the "StreamSink" service, which also measures the latency of the chunks
+ * and the time to first byte. Sample of usage:<br>
+ * <br>
+ * bench-stream --size 100m --chunk 64k --concurrency 4 --num 20<br>
+ * bench-stream files.upload --file /temp/data.zip
+ */
+@Name("bench-stream")
+public class BenchStream extends Command {
+
+	public BenchStream() {
+		option("size <bytes>", "size of the synthetic streams (eg. 10m, default is 10m)");
+		option("file <filename>", "send a file instead of synthetic data");
+		option("chunk <bytes>", "size of the chunks (eg. 64k, default is 64k)");
+		option("num <number>", "number of streams (default is the concurrency)");
+		option("concurrency <number>", "number of parallel streams (default is 1)");
+		option("nodeID <nodeID>", "nodeID of the receiver");
+		option("timeout <seconds>", "timeout of the streams (default is 0 = no timeout)");
+	}
+
+	@Override
+	public String getDescription() {
+		return "Benchmark stream transfer";
+	}
+
+	@Override
+	public String getUsage() {
+		return "bench-stream [action]";
+	}
+
+	@Override
+	public int getNumberOfRequiredParameters() {
+		return 0;
+	}
+
+	@Override
+	public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) throws Exception {
+
+		// Parse parameters
+		boolean hasAction = parameters.length > 0 && !parameters[0].startsWith("--");
+		String action = hasAction ? parameters[0] : StreamSink.ACTION_NAME;
+		Collection<String> knownParams = Arrays.asList(new String[] { "size", "file", "chunk", "num", "concurrency",
+				"nodeID", "timeout" });
+		Tree flags = parseFlags(hasAction ? 1 : 0, parameters, knownParams);
+		String path = flags.get("file", "");
+		File file = path == null || path.isEmpty() ? null : new File(path);
+		if (file != null && !file.isFile()) {
+			out.println("File not found: " + path);
+			return;
+		}
+		long size = file == null ? parseSize(flags.get("size", "10m")) : file.length();
+		int chunk = (int) Math.max(8, parseSize(flags.get("chunk", "64k")));
+		int concurrency = Math.max(1, flags.get("concurrency", 1));
+		long num = Math.max(1, flags.get("num", (long) concurrency));
+		String nodeID = flags.get("nodeID", "");
+		CallOptions.Options opts = CallOptions.timeout(1000L * flags.get("timeout", 0));
+		if (nodeID != null && !nodeID.isEmpty()) {
+			opts = opts.nodeID(nodeID);
+		}
+
+		// Chunk latency is measured only by the StreamSink
+		boolean sink = StreamSink.ACTION_NAME.equals(action);
+		out.println(YELLOW + ">> Streaming " + num + " x " + formatBytes(size) + " to '" + action + "' in "
+				+ formatBytes(chunk) + " chunks (concurrency: " + concurrency + ")...");
+		out.println();
+		out.flush();
+
+		// Synthetic data
+		byte[] template = new byte[chunk];
+		if (file == null) {
+			ThreadLocalRandom.current().nextBytes(template);
+		}
+
+		// Start streams
+		StreamStats stats = new StreamStats();
+		AtomicLong counter = new AtomicLong();
+		CountDownLatch latch = new CountDownLatch(concurrency);
+		CallOptions.Options callOpts = opts;
+
+		// The senders block, so they don't use the broker's executor (which
+		// completes the streams and the responses)
+		AtomicInteger threadCounter = new AtomicInteger();
+		ExecutorService senders = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "bench-stream-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		long startTime = System.nanoTime();
+		for (int i = 0; i < concurrency; i++) {
+			senders.execute(() -> {
+				try {
+					while (counter.getAndIncrement() < num) {
+						try {
+							sendStream(broker, action, callOpts, sink, file, size, template, stats);
+						} catch (Throwable cause) {
+							stats.errors.incrementAndGet();
+							stats.cause.compareAndSet(null, cause);
+						}
+					}
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		try {
+			latch.await();
+		} finally {
+			senders.shutdownNow();
+		}
+		long duration = Math.max(1, System.nanoTime() - startTime);
+
+		// Print results
+		long bytes = stats.bytes.get();
+		out.println(GREEN + "Stream benchmark results:");
+		out.println();
+		out.println("  " + WHITE + formatBytes(bytes) + " in " + formatNamoSec(duration) + GRAY + " ("
+				+ formatNumber(stats.streams.get()) + " streams, " + formatNumber(stats.chunks.get()) + " chunks, "
+				+ formatNumber(stats.errors.get()) + " error(s))");
+		out.println();
+		out.println("  Throughput:          " + WHITE + formatBytes(bytes * 1000000000L / duration) + "/s");
+		HistogramSnapshot streamTimes = stats.streamTimes.snapshot();
+		if (streamTimes.getTotalCount() > 0) {
+			out.println("  Per stream:          " + WHITE
+					+ formatBytes(size * 1000000000L / Math.max(1, streamTimes.getMean())) + "/s");
+			out.println();
+			out.println("  Latency (p50 / p90 / p99 / max):");
+			out.println("    Stream:            " + WHITE + formatPercentiles(streamTimes));
+			HistogramSnapshot ttfb = stats.firstByteTimes.snapshot();
+			if (ttfb.getTotalCount() > 0) {
+				out.println("    Time to 1st byte:  " + WHITE + formatPercentiles(ttfb));
+			}
+			HistogramSnapshot chunks = stats.chunkTimes;
+			if (chunks != null && chunks.getTotalCount() > 0) {
+				out.println("    Chunk:             " + WHITE + formatPercentiles(chunks));
+			}
+		}
+		Throwable cause = stats.cause.get();
+		if (cause != null) {
+			out.println();
+			out.println(YELLOW + "Trace of the first error:");
+			out.println();
+			cause.printStackTrace(out);
+			if (sink) {
+				out.println();
+				out.println(GRAY + "Install the \"" + StreamSink.class.getName()
+						+ "\" service on the receiver node(s).");
+			}
+		}
+	}
+
+	protected void sendStream(ServiceBroker broker, String action, CallOptions.Options opts, boolean sink,
+			File file, long size, byte[] template, StreamStats stats) throws Exception {
+		PacketStream stream = broker.createStream();
+		long startMicros = EventCounter.currentTimeMicros();
+		long start = System.nanoTime();
+		Promise promise = broker.call(action, stream, opts);
+
+		// Send chunks
+		int chunk = template.length;
+		long chunks = 0;
+		if (file == null) {
+			for (long sent = 0; sent < size; sent += chunk) {
+				byte[] bytes = Arrays.copyOf(template, (int) Math.min(chunk, size - sent));
+				if (sink && bytes.length >= 8) {
+					StreamSink.writeLong(bytes, EventCounter.currentTimeMicros());
+				}
+				stream.sendData(bytes);
+				chunks++;
+			}
+		} else {
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				byte[] buffer = new byte[chunk];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					byte[] bytes = Arrays.copyOf(buffer, n);
+					if (sink && bytes.length >= 8) {
+						StreamSink.writeLong(bytes, EventCounter.currentTimeMicros());
+					}
+					stream.sendData(bytes);
+					chunks++;
+				}
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (Exception ignored) {
+					}
+				}
+			}
+		}
+		stream.sendClose();
+
+		// Wait for response
+		Tree rsp = promise.waitFor();
+		if (rsp != null && rsp.getType() == PacketStream.class) {
+
+			// Response is a stream (time to first byte is measured here)
+			rsp = receiveStream((PacketStream) rsp.asObject(), start, stats);
+		}
+		stats.streamTimes.record(System.nanoTime() - start);
+		stats.streams.incrementAndGet();
+		stats.bytes.addAndGet(size);
+		stats.chunks.addAndGet(chunks);
+		if (sink && rsp != null) {
+			long firstByte = rsp.get("firstByte", 0L);
+			if (firstByte > 0) {
+				stats.firstByteTimes.record(Math.max(0, (firstByte - startMicros) * 1000L));
+			}
+			String histogram = rsp.get("histogram", "");
+			if (histogram != null && !histogram.isEmpty()) {
+				stats.addChunkTimes(HistogramSnapshot.fromBytes(Base64.getDecoder().decode(histogram)));
+			}
+		}
+	}
+
+	protected Tree receiveStream(PacketStream stream, long start, StreamStats stats) throws Exception {
+		CountDownLatch closed = new CountDownLatch(1);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		long[] first = new long[1];
+		stream.onPacket((bytes, cause, close) -> {
+			if (bytes != null && bytes.length > 0 && first[0] == 0) {
+				first[0] = System.nanoTime();
+			}
+			if (cause != null) {
+				error.set(cause);
+			}
+			if (cause != null || close) {
+				closed.countDown();
+			}
+		});
+		closed.await(10, TimeUnit.MINUTES);
+		if (error.get() != null) {
+			throw new Exception("Unable to receive response stream!", error.get());
+		}
+		if (first[0] > 0) {
+			stats.firstByteTimes.record(first[0] - start);
+		}
+		return null;
+	}
+
+	// --- FORMATTERS ---
+
+	protected String formatPercentiles(HistogramSnapshot snapshot) {
+		return formatNamoSec(snapshot.getValueAtPercentile(50)) + " / "
+				+ formatNamoSec(snapshot.getValueAtPercentile(90)) + " / "
+				+ formatNamoSec(snapshot.getValueAtPercentile(99)) + " / " + formatNamoSec(snapshot.getMax());
+	}
+
+	protected String formatBytes(long bytes) {
+		if (bytes < 1024) {
+			return bytes + " bytes";
+		}
+		if (bytes < 1024 * 1024) {
+			return String.format(Locale.US, "%.1f KB", bytes / 1024d);
+		}
+		if (bytes < 1024L * 1024 * 1024) {
+			return String.format(Locale.US, "%.1f MB", bytes / 1024d / 1024d);
+		}
+		return String.format(Locale.US, "%.2f GB", bytes / 1024d / 1024d / 1024d);
+	}
+
+	// --- STATISTICS ---
+
+	protected static final class StreamStats {
+
+		protected final AtomicLong streams = new AtomicLong();
+		protected final AtomicLong bytes = new AtomicLong();
+		protected final AtomicLong chunks = new AtomicLong();
+		protected final AtomicLong errors = new AtomicLong();
+		protected final AtomicReference<Throwable> cause = new AtomicReference<>();
+
+		protected final LatencyHistogram streamTimes = new LatencyHistogram();
+		protected final LatencyHistogram firstByteTimes = new LatencyHistogram();
+
+		// Merged results of the StreamSink
+		protected volatile HistogramSnapshot chunkTimes;
+
+		protected synchronized void addChunkTimes(HistogramSnapshot snapshot) {
+			chunkTimes = snapshot.add(chunkTimes);
+		}
+
+	}
+
+}
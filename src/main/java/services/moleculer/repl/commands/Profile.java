@@ -0,0 +1,196 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.commands;
+
+import static services.moleculer.repl.ColorWriter.GRAY;
+import static services.moleculer.repl.ColorWriter.GREEN;
+import static services.moleculer.util.CommonUtils.formatNamoSec;
+import static services.moleculer.util.CommonUtils.formatNumber;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import services.moleculer.ServiceBroker;
+import services.moleculer.repl.Command;
+import services.moleculer.repl.Repl;
+import services.moleculer.repl.TextTable;
+import services.moleculer.repl.bench.JfrProfiler;
+import services.moleculer.service.Name;
+
+/**
+ * Executes a command while a JFR recording is running, then prints the hot
+ * methods, allocation sites and contended locks. Sample: <br>
+ * <br>
+ * profile bench math.add --time 10<br>
+ * profile --top 20 --jfr /temp/nodes.jfr nodes --details
+ */
+@Name("profile")
+public class Profile extends Command {
+
+	public Profile() {
+		option("top <number>", "number of rows of the summary tables (default is 10)");
+		option("jfr <filename>", "keep the recording in this file");
+	}
+
+	@Override
+	public String getDescription() {
+		return "Profiles a command with JFR";
+	}
+
+	@Override
+	public String getUsage() {
+		return "profile [--top number] [--jfr filename] <command...>";
+	}
+
+	@Override
+	public int getNumberOfRequiredParameters() {
+		return 1;
+	}
+
+	@Override
+	public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) throws Exception {
+
+		// Parse leading flags
+		int top = 10;
+		String jfr = null;
+		int i = 0;
+		while (i + 1 < parameters.length && parameters[i].startsWith("--")) {
+			if ("--top".equals(parameters[i])) {
+				top = Integer.parseInt(parameters[i + 1]);
+			} else if ("--jfr".equals(parameters[i])) {
+				jfr = parameters[i + 1];
+			} else {
+				break;
+			}
+			i += 2;
+		}
+		StringBuilder tmp = new StringBuilder();
+		for (; i < parameters.length; i++) {
+			tmp.append(parameters[i]).append(' ');
+		}
+		String command = tmp.toString().trim();
+		if (command.isEmpty()) {
+			out.println("Missing command! Usage: " + getUsage());
+			return;
+		}
+
+		// Flight Recorder is an optional module of the JVM
+		if (!JfrProfiler.isAvailable()) {
+			out.println("Java Flight Recorder (jdk.jfr) is not available in this runtime!");
+			out.println();
+			return;
+		}
+
+		// Get REPL Service
+		Repl repl = getService(broker, Repl.class);
+		if (repl == null) {
+			out.println("Unable to find REPL Service!");
+			out.println();
+			return;
+		}
+
+		// Execute command
+		Path file = jfr == null ? Files.createTempFile("repl-profile-", ".jfr") : Paths.get(jfr);
+		Recording recording = JfrProfiler.start("REPL profile");
+		long start = System.nanoTime();
+		try {
+			repl.onCommand(out, command);
+		} finally {
+			JfrProfiler.stop(recording, file);
+		}
+		long duration = System.nanoTime() - start;
+
+		// Print summary
+		out.println();
+		out.println(GREEN + "Profile of \"" + command + "\" (" + formatNamoSec(duration) + "):");
+		out.println();
+		try {
+			printSummary(out, file, top);
+		} finally {
+			if (jfr == null) {
+				Files.deleteIfExists(file);
+			} else {
+				out.println(GRAY + "Recording saved into \"" + file.toAbsolutePath() + "\".");
+			}
+		}
+	}
+
+	/**
+	 * Prints the top-N hot methods, allocation sites and contended locks of a
+	 * JFR recording.
+	 */
+	protected static void printSummary(PrintWriter out, Path file, int top) throws IOException {
+		JfrProfiler.Summary summary = JfrProfiler.summarize(file);
+
+		// Hot methods
+		long samples = Math.max(1, summary.getExecutionSamples());
+		List<JfrProfiler.Entry> methods = summary.getHotMethods(top);
+		if (methods.isEmpty()) {
+			out.println(GRAY + "No execution samples.");
+		} else {
+			TextTable table = new TextTable("Hot method", "Samples", "Share");
+			for (JfrProfiler.Entry entry : methods) {
+				table.addRow(entry.getName(), formatNumber(entry.getCount()),
+						entry.getCount() * 100 / samples + "%");
+			}
+			out.println(table);
+		}
+		out.println();
+
+		// Allocation sites
+		List<JfrProfiler.Entry> allocations = summary.getAllocationSites(top);
+		if (allocations.isEmpty()) {
+			out.println(GRAY + "No allocation samples.");
+		} else {
+			TextTable table = new TextTable("Allocation site", "Samples", "Weight");
+			for (JfrProfiler.Entry entry : allocations) {
+				table.addRow(entry.getName(), formatNumber(entry.getCount()),
+						formatNumber(entry.getTotal()) + " bytes");
+			}
+			out.println(table);
+		}
+		out.println();
+
+		// Lock contention
+		List<JfrProfiler.Entry> locks = summary.getLockContention(top);
+		if (locks.isEmpty()) {
+			out.println(GRAY + "No contended locks.");
+		} else {
+			TextTable table = new TextTable("Contended lock", "Events", "Blocked");
+			for (JfrProfiler.Entry entry : locks) {
+				table.addRow(entry.getName(), formatNumber(entry.getCount()), formatNamoSec(entry.getTotal()));
+			}
+			out.println(table);
+		}
+		out.println();
+	}
+
+}
@@ -31,13 +31,10 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 
-import io.datatree.Tree;
 import services.moleculer.ServiceBroker;
 import services.moleculer.repl.Command;
 import services.moleculer.repl.Repl;
 import services.moleculer.service.Name;
-import services.moleculer.service.Service;
-import services.moleculer.service.ServiceRegistry;
 import services.moleculer.util.CommonUtils;
 
 /**
@@ -124,20 +121,4 @@ public class Run extends Command {
 		out.println();		
 	}
 
-	@SuppressWarnings("unchecked")
-	private static final <T extends Service> T getService(ServiceBroker broker, Class<T> type) {
-		ServiceRegistry registry = broker.getConfig().getServiceRegistry();
-		Tree info = registry.getDescriptor();
-		for (Tree service : info.get("services")) {
-			String name = service.get("name", "");
-			if (name != null && !name.isEmpty()) {
-				Service instance = broker.getLocalService(name);
-				if (type.isAssignableFrom(instance.getClass())) {
-					return (T) instance;
-				}
-			}
-		}
-		return null;
-	}
-
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.commands;
+
+import static services.moleculer.repl.ColorWriter.GRAY;
+import static services.moleculer.util.CommonUtils.formatNamoSec;
+import static services.moleculer.util.CommonUtils.formatNumber;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import io.datatree.Tree;
+import services.moleculer.ServiceBroker;
+import services.moleculer.repl.Command;
+import services.moleculer.repl.RemoteReader;
+import services.moleculer.repl.RemoteRepl;
+import services.moleculer.repl.TextTable;
+import services.moleculer.service.Name;
+
+/**
+ * Lists the telnet sessions of the remote console, with their resource usage.
+ * Sample:<br>
+ * <br>
+ * sessions --kill 3
+ */
+@Name("sessions")
+public class Sessions extends Command {
+
+	public Sessions() {
+		option("kill <id>", "close the session with the specified ID");
+	}
+
+	@Override
+	public String getDescription() {
+		return "Lists or closes telnet sessions";
+	}
+
+	@Override
+	public String getUsage() {
+		return "sessions [--kill id]";
+	}
+
+	@Override
+	public int getNumberOfRequiredParameters() {
+		return 0;
+	}
+
+	@Override
+	public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) throws Exception {
+		RemoteRepl repl = getService(broker, RemoteRepl.class);
+		if (repl == null) {
+			out.println("Remote (telnet) console is not running.");
+			return;
+		}
+		RemoteReader[] sessions = repl.getSessions();
+		Arrays.sort(sessions, (a, b) -> Integer.compare(a.getId(), b.getId()));
+
+		// Close session
+		Tree flags = parseFlags(0, parameters, Arrays.asList("kill"));
+		String kill = flags.get("kill", "");
+		if (kill != null && !kill.isEmpty()) {
+			int id = Integer.parseInt(kill);
+			for (RemoteReader session : sessions) {
+				if (session.getId() == id) {
+					repl.closeSession(session);
+					out.println("Session " + id + " (" + session.getAddress() + ") closed.");
+					return;
+				}
+			}
+			out.println("Session " + id + " not found.");
+			return;
+		}
+
+		// List sessions
+		if (sessions.length == 0) {
+			out.println("No opened sessions.");
+			return;
+		}
+		long now = System.currentTimeMillis();
+		TextTable table = new TextTable("ID", "Address", "User", "Connected", "Idle", "Commands", "Received",
+				"Sent", "Queued", "CPU time", "State");
+		for (RemoteReader session : sessions) {
+			String user = session.getUser();
+			int pending = session.getPendingCommands();
+			table.addRow(Integer.toString(session.getId()), session.getAddress(), user == null ? "(login)" : user,
+					formatMillis(now - session.getConnectedAt()), formatMillis(now - session.getLastActivity()),
+					formatNumber(session.getCommandCount()), formatNumber(session.getBytesIn()) + " bytes",
+					formatNumber(session.getBytesOut()) + " bytes", formatNumber(session.getQueuedBytes()) + " bytes",
+					formatNamoSec(session.getCpuTime()), pending == 0 ? "idle" : "busy (" + pending + ")");
+		}
+		out.println(table);
+		if (repl.isVirtualThreads() || repl.getSocketTimeout() > 0) {
+			out.println();
+		}
+		if (repl.isVirtualThreads()) {
+			out.println(GRAY + "CPU time is not measured on virtual threads.");
+		}
+		if (repl.getSocketTimeout() > 0) {
+			out.println(GRAY + "Idle sessions are closed after " + formatMillis(repl.getSocketTimeout()) + ".");
+		}
+	}
+
+	protected String formatMillis(long millis) {
+		return formatNamoSec(Math.max(0, millis) * 1000000L);
+	}
+
+}
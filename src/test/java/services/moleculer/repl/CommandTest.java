@@ -0,0 +1,105 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.PrintWriter;
+
+import org.junit.jupiter.api.Test;
+
+import services.moleculer.ServiceBroker;
+
+/**
+ * Checks the parsers of the command arguments.
+ */
+public class CommandTest {
+
+	protected final Command command = new Command() {
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public String getUsage() {
+			return "";
+		}
+
+		@Override
+		public int getNumberOfRequiredParameters() {
+			return 0;
+		}
+
+		@Override
+		public void onCommand(ServiceBroker broker, PrintWriter out, String[] parameters) {
+		}
+
+	};
+
+	@Test
+	public void testParseMillis() {
+		assertEquals(0, command.parseMillis(null));
+		assertEquals(0, command.parseMillis(" "));
+		assertEquals(3000, command.parseMillis("3"));
+		assertEquals(2000, command.parseMillis("2s"));
+		assertEquals(1500, command.parseMillis("1.5s"));
+		assertEquals(20, command.parseMillis("20ms"));
+		assertEquals(20, command.parseMillis(" 20 MS "));
+		assertEquals(2, command.parseMillis("2500us"));
+		assertEquals(60000, command.parseMillis("1m"));
+	}
+
+	@Test
+	public void testParseNanos() {
+		assertEquals(500000, command.parseNanos("500us"));
+		assertEquals(20000000, command.parseNanos("20ms"));
+		assertEquals(1000000000, command.parseNanos("1s"));
+	}
+
+	@Test
+	public void testParseSize() {
+		assertEquals(512, Command.parseSize("512"));
+		assertEquals(512, Command.parseSize("512b"));
+		assertEquals(64 * 1024, Command.parseSize("64k"));
+		assertEquals(64 * 1024, Command.parseSize(" 64 KB "));
+		assertEquals(10 * 1024 * 1024, Command.parseSize("10m"));
+		assertEquals(10 * 1024 * 1024, Command.parseSize("10mb"));
+		assertEquals(2L * 1024 * 1024 * 1024, Command.parseSize("2g"));
+		assertEquals(2L * 1024 * 1024 * 1024, Command.parseSize("2GB"));
+	}
+
+	@Test
+	public void testInvalidSize() {
+		assertThrows(NumberFormatException.class, () -> Command.parseSize("1.5m"));
+		assertThrows(NumberFormatException.class, () -> Command.parseSize("-1k"));
+		assertThrows(NumberFormatException.class, () -> Command.parseSize("10x"));
+		assertThrows(NumberFormatException.class, () -> Command.parseSize(""));
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import services.moleculer.repl.CompletionIndex.Completion;
+import services.moleculer.repl.commands.Bench;
+import services.moleculer.repl.commands.Call;
+import services.moleculer.repl.commands.DCall;
+import services.moleculer.repl.commands.Emit;
+import services.moleculer.repl.commands.Profile;
+
+/**
+ * Checks the selection of the candidates of the tab completion (by the usage
+ * and the options of the commands).
+ */
+public class CompletionIndexTest {
+
+	protected CompletionIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		LocalRepl repl = new LocalRepl();
+		repl.commands.put("bench", new Bench());
+		repl.commands.put("call", new Call());
+		repl.commands.put("dcall", new DCall());
+		repl.commands.put("emit", new Emit());
+		repl.commands.put("profile", new Profile());
+		index = new CompletionIndex(repl, null, Runnable::run, Long.MAX_VALUE);
+		String[] actions = new String[150];
+		actions[0] = "$node.list";
+		actions[1] = "math.add";
+		actions[2] = "math.sub";
+		for (int i = 3; i < actions.length; i++) {
+			actions[i] = String.format("users.a%03d", i);
+		}
+		String[] events = { "user.created", "user.removed" };
+		String[] nodes = { "node-1", "node-2" };
+		index.snapshot = index.build(new CompletionIndex.Snapshot(0, new String[0], new HashMap<>(), actions,
+				events, nodes));
+	}
+
+	@Test
+	public void testCommands() {
+		assertCandidates("ca", 0, "call");
+		assertCandidates("he", 0, "help");
+		assertCandidates("help d", 5, "dcall");
+		assertEquals(6, index.complete("").total);
+	}
+
+	@Test
+	public void testArguments() {
+		assertCandidates("call math.", 5, "math.add", "math.sub");
+		assertCandidates("emit user.c", 5, "user.created");
+		assertCandidates("dcall n", 6, "node-1", "node-2");
+		assertCandidates("dcall node-1 math.s", 13, "math.sub");
+
+		// No more completable arguments (JSON parameters)
+		assertNull(index.complete("call math.add "));
+		assertNull(index.complete("call math.add {\"a"));
+		assertNull(index.complete("unknown x"));
+	}
+
+	@Test
+	public void testOptions() {
+		assertCandidates("bench --node", 6, "--nodeID", "--nodes");
+		assertCandidates("bench --nodeID n", 15, "node-1", "node-2");
+		assertCandidates("bench --num 10 math.a", 15, "math.add");
+	}
+
+	@Test
+	public void testNestedCommand() {
+		assertCandidates("profile ca", 8, "call");
+		assertCandidates("profile call math.a", 13, "math.add");
+		assertCandidates("profile --top 5 call math.a", 21, "math.add");
+	}
+
+	@Test
+	public void testInternalNames() {
+
+		// Listed only if the "$" is typed
+		Completion all = index.complete("call ");
+		assertEquals("math.add", all.candidates[0]);
+		assertCandidates("call $", 5, "$node.list");
+	}
+
+	@Test
+	public void testLimitAndPrefix() {
+		Completion completion = index.complete("call users.");
+		assertEquals(147, completion.total);
+		assertEquals(CompletionIndex.MAX_CANDIDATES, completion.candidates.length);
+		assertEquals("users.a", completion.prefix);
+
+		// No match
+		completion = index.complete("call x");
+		assertEquals(0, completion.total);
+	}
+
+	// --- UTILITIES ---
+
+	protected void assertCandidates(String line, int start, String... candidates) {
+		Completion completion = index.complete(line);
+		assertEquals(start, completion.start);
+		assertEquals(candidates.length, completion.total);
+		assertArrayEquals(candidates, completion.candidates);
+	}
+
+}
@@ -0,0 +1,224 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the WebSocket framing of the HTTP console (parsing of the masked
+ * client frames and encoding of the server frames).
+ */
+public class HttpReaderTest {
+
+	protected List<String> messages;
+	protected List<byte[]> sent;
+	protected List<Integer> statuses;
+	protected HttpReader reader;
+
+	@BeforeEach
+	public void setUp() {
+		messages = new ArrayList<>();
+		sent = new ArrayList<>();
+		statuses = new ArrayList<>();
+		reader = new HttpReader(new RemoteRepl(), null, null, null, null, false, "admin", "admin") {
+
+			@Override
+			protected void onMessage(String text) {
+				messages.add(text);
+			}
+
+			@Override
+			protected void addBytes(byte[] bytes, boolean directSet) {
+				sent.add(bytes);
+			}
+
+			@Override
+			protected void closeWebSocket(int status) {
+				rejected = true;
+				statuses.add(status);
+			}
+
+		};
+		reader.webSocket = true;
+	}
+
+	// --- CLIENT FRAMES ---
+
+	@Test
+	public void testTextFrame() throws Exception {
+		receive(clientFrame(true, HttpReader.OPCODE_TEXT, "help"));
+		assertEquals("[help]", messages.toString());
+		assertEquals(0, reader.inputLength);
+	}
+
+	@Test
+	public void testFramesInOnePacket() throws Exception {
+		receive(concat(clientFrame(true, HttpReader.OPCODE_TEXT, "nodes"),
+				clientFrame(true, HttpReader.OPCODE_TEXT, "services")));
+		assertEquals("[nodes, services]", messages.toString());
+	}
+
+	@Test
+	public void testSplitFrame() throws Exception {
+		byte[] frame = clientFrame(true, HttpReader.OPCODE_TEXT, "actions");
+		for (byte b : frame) {
+			receive(new byte[] { b });
+		}
+		assertEquals("[actions]", messages.toString());
+	}
+
+	@Test
+	public void testFragmentedMessage() throws Exception {
+		receive(clientFrame(false, HttpReader.OPCODE_TEXT, "he"));
+		receive(clientFrame(true, HttpReader.OPCODE_PING, "ping"));
+		receive(clientFrame(false, HttpReader.OPCODE_CONTINUATION, "l"));
+		receive(clientFrame(true, HttpReader.OPCODE_CONTINUATION, "p"));
+		assertEquals("[help]", messages.toString());
+
+		// Control frames are answered between the fragments
+		assertEquals(1, sent.size());
+		assertArrayEquals(HttpReader.frame(HttpReader.OPCODE_PONG, bytes("ping"), 4), sent.get(0));
+	}
+
+	@Test
+	public void testExtendedLength() throws Exception {
+		char[] chars = new char[300];
+		Arrays.fill(chars, 'x');
+		String text = new String(chars);
+		receive(clientFrame(true, HttpReader.OPCODE_TEXT, text));
+		assertEquals(1, messages.size());
+		assertEquals(text, messages.get(0));
+	}
+
+	@Test
+	public void testUnmaskedFrame() throws Exception {
+		receive(HttpReader.frame(HttpReader.OPCODE_TEXT, bytes("help"), 4));
+		assertTrue(messages.isEmpty());
+		assertEquals("[1002]", statuses.toString());
+	}
+
+	@Test
+	public void testTooLargeFrame() throws Exception {
+		byte[] header = { (byte) 0x81, (byte) (0x80 | 127), 0, 0, 0, 0, 0, 1, 0, 1 };
+		receive(header);
+		assertEquals("[1009]", statuses.toString());
+	}
+
+	@Test
+	public void testUnknownOpcode() throws Exception {
+		receive(clientFrame(true, 3, "help"));
+		assertTrue(messages.isEmpty());
+		assertEquals("[1002]", statuses.toString());
+	}
+
+	@Test
+	public void testCloseFrame() throws Exception {
+		receive(concat(clientFrame(true, HttpReader.OPCODE_CLOSE, ""),
+				clientFrame(true, HttpReader.OPCODE_TEXT, "help")));
+		assertTrue(messages.isEmpty());
+		assertEquals("[1000]", statuses.toString());
+	}
+
+	// --- SERVER FRAMES ---
+
+	@Test
+	public void testServerFrameHeaders() {
+		byte[] small = HttpReader.frame(HttpReader.OPCODE_TEXT, new byte[125], 125);
+		assertEquals(2 + 125, small.length);
+		assertEquals(0x81, small[0] & 0xff);
+		assertEquals(125, small[1]);
+
+		byte[] medium = HttpReader.frame(HttpReader.OPCODE_TEXT, new byte[300], 300);
+		assertEquals(4 + 300, medium.length);
+		assertEquals(126, medium[1]);
+		assertEquals(300, ((medium[2] & 0xff) << 8) | (medium[3] & 0xff));
+
+		byte[] large = HttpReader.frame(HttpReader.OPCODE_BINARY, new byte[70000], 70000);
+		assertEquals(10 + 70000, large.length);
+		assertEquals(0x82, large[0] & 0xff);
+		assertEquals(127, large[1]);
+		long len = 0;
+		for (int i = 2; i < 10; i++) {
+			len = (len << 8) | (large[i] & 0xff);
+		}
+		assertEquals(70000, len);
+	}
+
+	@Test
+	public void testChunk() {
+		assertEquals("5\r\nhello\r\n", new String(HttpReader.chunk(bytes("hello")), StandardCharsets.US_ASCII));
+		assertEquals("0\r\n\r\n", new String(HttpReader.chunk(new byte[0]), StandardCharsets.US_ASCII));
+	}
+
+	// --- UTILITIES ---
+
+	protected void receive(byte[] bytes) throws Exception {
+		reader.onBytes(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Creates a masked (client-to-server) frame.
+	 */
+	protected static byte[] clientFrame(boolean fin, int opcode, String text) {
+		byte[] payload = bytes(text);
+		byte[] frame = HttpReader.frame(opcode, payload, payload.length);
+		if (!fin) {
+			frame[0] &= 0x7f;
+		}
+		frame[1] |= 0x80;
+		int headerSize = frame.length - payload.length;
+		byte[] mask = { 0x12, 0x34, 0x56, 0x78 };
+		byte[] masked = new byte[frame.length + 4];
+		System.arraycopy(frame, 0, masked, 0, headerSize);
+		System.arraycopy(mask, 0, masked, headerSize, 4);
+		for (int i = 0; i < payload.length; i++) {
+			masked[headerSize + 4 + i] = (byte) (payload[i] ^ mask[i & 3]);
+		}
+		return masked;
+	}
+
+	protected static byte[] concat(byte[] first, byte[] second) {
+		byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, bytes, first.length, second.length);
+		return bytes;
+	}
+
+	protected static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,200 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import services.moleculer.repl.commands.Call;
+import services.moleculer.repl.commands.Emit;
+
+/**
+ * Checks the line editing keys, the history and the tab completion of the
+ * telnet sessions.
+ */
+public class LineEditorTest {
+
+	protected static final String LEFT = "\u001B[D";
+	protected static final String RIGHT = "\u001B[C";
+	protected static final String UP = "\u001B[A";
+	protected static final String DOWN = "\u001B[B";
+	protected static final String HOME = "\u001B[H";
+	protected static final String END = "\u001B[F";
+	protected static final String DELETE = "\u001B[3~";
+
+	protected StringBuilder output;
+	protected RemoteRepl repl;
+	protected RemoteReader reader;
+	protected LineEditor editor;
+
+	@BeforeEach
+	public void setUp() {
+		output = new StringBuilder();
+		repl = new RemoteRepl();
+		reader = new RemoteReader(repl, null, null, null, null, false, true, "admin", "admin") {
+
+			@Override
+			protected void addEcho(byte[] bytes) {
+				output.append(new String(bytes, StandardCharsets.US_ASCII));
+			}
+
+		};
+		editor = new LineEditor(reader, 3);
+	}
+
+	// --- EDITING ---
+
+	@Test
+	public void testTyping() {
+		assertNull(type("help"));
+		assertEquals("help", type("\r"));
+		assertEquals("", type("\r"));
+	}
+
+	@Test
+	public void testBackspace() {
+		assertEquals("help", type("helpx\b\r"));
+		assertEquals("help", type("helpxy" + (char) 127 + (char) 127 + "\r"));
+		assertEquals("", type("\b\b\r"));
+	}
+
+	@Test
+	public void testCursorMovement() {
+		assertEquals("help", type("elp" + LEFT + LEFT + LEFT + "h\r"));
+		assertEquals("help", type("hel" + HOME + END + "p\r"));
+		assertEquals("help", type("hlp" + HOME + RIGHT + "e\r"));
+		assertEquals("help", type("elp" + (char) 1 + "h" + (char) 5 + "\r"));
+	}
+
+	@Test
+	public void testDelete() {
+		assertEquals("help", type("hxelp" + HOME + RIGHT + DELETE + "\r"));
+		assertEquals("help", type("hxelp" + (char) 1 + (char) 6 + (char) 4 + "\r"));
+		assertEquals("call ", type("call math.add" + (char) 23 + "\r"));
+		assertEquals("math.add", type("call math.add" + LEFT + LEFT + LEFT + LEFT + LEFT + LEFT + LEFT + LEFT
+				+ (char) 21 + "\r"));
+		assertEquals("call", type("call math.add" + HOME + RIGHT + RIGHT + RIGHT + RIGHT + (char) 11 + "\r"));
+	}
+
+	@Test
+	public void testCancel() {
+		assertNull(type("call math.add" + (char) 3));
+		assertEquals("help", type("help\r"));
+		assertTrue(output.toString().contains("^C"));
+	}
+
+	@Test
+	public void testPasswordMask() {
+		reader.maskPassword = true;
+		assertEquals("secret", type("secret\r"));
+		assertFalse(output.toString().contains("secret"));
+		assertEquals(6, output.chars().filter(c -> c == '*').count());
+	}
+
+	// --- HISTORY ---
+
+	@Test
+	public void testHistory() {
+		editor.addHistory("first");
+		editor.addHistory("second");
+		editor.addHistory("second");
+		editor.addHistory("third");
+		editor.addHistory("fourth");
+
+		// Size of the history is 3, repeated lines are stored once
+		assertEquals("fourth", type(UP + "\r"));
+		assertEquals("third", type(UP + UP + "\r"));
+		assertEquals("second", type(UP + UP + UP + "\r"));
+		assertEquals("second", type(UP + UP + UP + UP + "\r"));
+		assertEquals("third", type(UP + UP + UP + DOWN + "\r"));
+
+		// The edited line is restored
+		assertEquals("nodes", type("nodes" + UP + UP + DOWN + DOWN + "\r"));
+		assertEquals("nodes", type("nodes" + DOWN + "\r"));
+	}
+
+	// --- TAB COMPLETION ---
+
+	@Test
+	public void testCompletion() {
+		repl.completionIndex = createIndex(repl);
+		assertEquals("call ", type("ca\t\r"));
+		assertEquals("call math.add ", type("call math.a\t\r"));
+		assertEquals("emit user.created ", type("emit u\t\r"));
+
+		// Common prefix, then the list of the candidates
+		output.setLength(0);
+		assertEquals("call math.", type("call m\t\r"));
+		output.setLength(0);
+		assertEquals("call math.", type("call math.\t\r"));
+		assertTrue(output.toString().contains("math.add"));
+		assertTrue(output.toString().contains("math.sub"));
+
+		// No candidates
+		output.setLength(0);
+		assertEquals("call x", type("call x\t\r"));
+		assertTrue(output.toString().indexOf(7) > -1);
+	}
+
+	// --- UTILITIES ---
+
+	/**
+	 * Creates an index with two commands and a few action and event names.
+	 */
+	protected static CompletionIndex createIndex(RemoteRepl repl) {
+		repl.commands.put("call", new Call());
+		repl.commands.put("emit", new Emit());
+		CompletionIndex index = new CompletionIndex(repl, null, Runnable::run, Long.MAX_VALUE);
+		String[] none = {};
+		String[] actions = { "$node.list", "math.add", "math.sub", "users.find" };
+		String[] events = { "user.created" };
+		index.snapshot = index.build(new CompletionIndex.Snapshot(0, none, new HashMap<>(), actions, events, none));
+		return index;
+	}
+
+	/**
+	 * Sends the characters to the editor, returns the last entered line.
+	 */
+	protected String type(String text) {
+		String entered = null;
+		for (int i = 0; i < text.length(); i++) {
+			String line = editor.onChar(text.charAt(i));
+			if (line != null) {
+				entered = line;
+			}
+		}
+		return entered;
+	}
+
+}
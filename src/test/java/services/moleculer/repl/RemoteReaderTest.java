@@ -0,0 +1,122 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the telnet (IAC) parser of the remote console. The negotiations must
+ * be removed from the input, even if they are split between packets.
+ */
+public class RemoteReaderTest {
+
+	protected static final int IAC = 255;
+	protected static final int SB = 250;
+	protected static final int SE = 240;
+	protected static final int WILL = 251;
+	protected static final int DO = 253;
+	protected static final int NOP = 241;
+
+	protected StringBuilder chars;
+	protected RemoteReader reader;
+
+	@BeforeEach
+	public void setUp() {
+		chars = new StringBuilder();
+		reader = new RemoteReader(new RemoteRepl(), null, null, null, null, false, false, "admin", "admin") {
+
+			@Override
+			protected void onChar(char c) {
+				chars.append(c);
+			}
+
+		};
+	}
+
+	@Test
+	public void testPlainText() throws Exception {
+		send("help\r\n");
+		assertEquals("help\r\n", chars.toString());
+	}
+
+	@Test
+	public void testOptionNegotiation() throws Exception {
+		send('a', IAC, WILL, 1, 'b', IAC, DO, 3, 'c');
+		assertEquals("abc", chars.toString());
+	}
+
+	@Test
+	public void testTwoByteCommands() throws Exception {
+		send('a', IAC, NOP, 'b', IAC, IAC, 'c');
+		assertEquals("abc", chars.toString());
+	}
+
+	@Test
+	public void testSubnegotiation() throws Exception {
+
+		// Window size (NAWS), with an escaped 255 in the payload
+		send('a', IAC, SB, 31, 0, 80, IAC, IAC, 24, IAC, SE, 'b');
+		assertEquals("ab", chars.toString());
+	}
+
+	@Test
+	public void testSplitSequences() throws Exception {
+		send('a', IAC);
+		send(WILL);
+		send(1, 'b', IAC, SB, 31, 0);
+		send(80, IAC);
+		send(SE, 'c');
+		assertEquals("abc", chars.toString());
+	}
+
+	@Test
+	public void testInputAfterFailedLogin() throws Exception {
+		send("ab");
+		reader.loginFailed = true;
+		send("cd");
+		assertEquals("ab", chars.toString());
+	}
+
+	// --- UTILITIES ---
+
+	protected void send(String text) throws Exception {
+		reader.onBytes(ByteBuffer.wrap(text.getBytes("US-ASCII")));
+	}
+
+	protected void send(int... bytes) throws Exception {
+		byte[] packet = new byte[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			packet[i] = (byte) bytes[i];
+		}
+		reader.onBytes(ByteBuffer.wrap(packet));
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import services.moleculer.ServiceBroker;
+import services.moleculer.config.ServiceBrokerConfig;
+
+/**
+ * Connects to the telnet console in TLS mode (with a self-signed certificate
+ * generated by the "keytool" of the JDK), and checks the resumption of the
+ * TLS session.
+ */
+public class RemoteReplTlsTest {
+
+	protected static final String PASSWORD = "changeit";
+
+	protected File dir;
+	protected File keyStore;
+	protected ServiceBroker broker;
+	protected RemoteRepl repl;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+
+		// Generate self-signed certificate
+		dir = Files.createTempDirectory("repl-tls").toFile();
+		keyStore = new File(dir, "repl.p12");
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "repl", "-keyalg", "RSA", "-keysize",
+				"2048", "-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore",
+				keyStore.getAbsolutePath(), "-storepass", PASSWORD, "-keypass", PASSWORD).inheritIO().start();
+		assertEquals(0, process.waitFor());
+
+		// Start console on an ephemeral port
+		ServiceBrokerConfig cfg = new ServiceBrokerConfig();
+		cfg.setNodeID("tls");
+		broker = new ServiceBroker(cfg);
+		repl = new RemoteRepl();
+		repl.setPort(0);
+		repl.setEcho(false);
+		repl.setTls(true);
+		repl.setKeyStore(keyStore.getAbsolutePath());
+		repl.setKeyStorePassword(PASSWORD);
+		broker.createService("$repl", repl);
+		broker.start();
+		assertNotNull(repl.serverChannel, "console not started");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		if (broker != null) {
+			broker.stop();
+		}
+		if (keyStore != null) {
+			keyStore.delete();
+		}
+		if (dir != null) {
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testSessionResumption() throws Exception {
+		SSLContext client = createClientContext();
+		byte[] first = runSession(client);
+		byte[] second = runSession(client);
+
+		// The second connection resumes the cached session
+		assertTrue(first.length > 0);
+		assertArrayEquals(first, second);
+	}
+
+	// --- UTILITIES ---
+
+	/**
+	 * Logs in, runs a command and returns the ID of the TLS session.
+	 */
+	protected byte[] runSession(SSLContext client) throws Exception {
+		int port = repl.serverChannel.socket().getLocalPort();
+		try (SSLSocket socket = (SSLSocket) client.getSocketFactory().createSocket("127.0.0.1", port)) {
+			socket.setSoTimeout(10000);
+
+			// TLS 1.3 resumes sessions with new IDs (by pre-shared keys)
+			socket.setEnabledProtocols(new String[] { "TLSv1.2" });
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+
+			readUntil(in, "Username:");
+			send(out, "admin");
+			readUntil(in, "Password:");
+			send(out, "admin");
+			assertTrue(readUntil(in, "mol $ ").contains("Welcome admin!"));
+
+			send(out, "sessions");
+			String response = readUntil(in, "mol $ ");
+			assertTrue(response.contains("admin"), response);
+
+			send(out, "close");
+			return socket.getSession().getId();
+		}
+	}
+
+	protected SSLContext createClientContext() throws Exception {
+		KeyStore store = KeyStore.getInstance("PKCS12");
+		try (InputStream in = new FileInputStream(keyStore)) {
+			store.load(in, PASSWORD.toCharArray());
+		}
+		TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		factory.init(store);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, factory.getTrustManagers(), null);
+		return context;
+	}
+
+	protected static void send(OutputStream out, String line) throws Exception {
+		out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+	protected static String readUntil(InputStream in, String text) throws Exception {
+		StringBuilder received = new StringBuilder(1024);
+		while (received.indexOf(text) == -1) {
+			int b = in.read();
+			if (b == -1) {
+				throw new IllegalStateException("Connection closed, received: " + received);
+			}
+			received.append((char) b);
+		}
+		return received.toString();
+	}
+
+}
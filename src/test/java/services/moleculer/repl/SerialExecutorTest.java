@@ -0,0 +1,140 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the ordering and the exclusive execution of the tasks of a session.
+ */
+public class SerialExecutorTest {
+
+	protected ExecutorService pool;
+
+	@BeforeEach
+	public void setUp() {
+		pool = Executors.newFixedThreadPool(8);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		SerialExecutor executor = new SerialExecutor(pool);
+		List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1000);
+		for (int i = 0; i < 1000; i++) {
+			int seq = i;
+			executor.execute(() -> {
+				if (running.incrementAndGet() > 1) {
+					overlaps.incrementAndGet();
+				}
+				executed.add(seq);
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(0, overlaps.get());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, executed.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testSessionsRunInParallel() throws Exception {
+		SerialExecutor first = new SerialExecutor(pool);
+		SerialExecutor second = new SerialExecutor(pool);
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+
+		// A blocked session does not block the others
+		first.execute(() -> {
+			try {
+				blocked.await();
+			} catch (InterruptedException interrupted) {
+			}
+		});
+		second.execute(done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(first.isBusy());
+
+		// Queued behind the blocked task
+		first.execute(() -> {
+		});
+		assertEquals(1, first.getQueued());
+		blocked.countDown();
+		long limit = System.currentTimeMillis() + 10000;
+		while (first.isBusy() && System.currentTimeMillis() < limit) {
+			Thread.sleep(10);
+		}
+		assertFalse(first.isBusy());
+		assertEquals(0, first.getQueued());
+	}
+
+	@Test
+	public void testFailingTask() throws Exception {
+		SerialExecutor executor = new SerialExecutor(pool);
+		CountDownLatch done = new CountDownLatch(1);
+		executor.execute(() -> {
+			throw new IllegalStateException("failed");
+		});
+		executor.execute(done::countDown);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRejectedTask() throws Exception {
+		pool.shutdown();
+		SerialExecutor executor = new SerialExecutor(pool);
+		assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+		}));
+		assertFalse(executor.isBusy());
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the rounding of the deadlines of the timer wheel. Timeouts must never
+ * expire before their deadlines, and at most one tick after them.
+ */
+public class TimerWheelTest {
+
+	protected final List<String> expired = new ArrayList<>();
+
+	@Test
+	public void testDeadlineIsRoundedUp() {
+		TimerWheel<String> wheel = new TimerWheel<>(100, 16, 0);
+		wheel.schedule("a", 150);
+		advance(wheel, 149);
+		advance(wheel, 199);
+		assertTrue(expired.isEmpty());
+		advance(wheel, 200);
+		assertEquals("[a]", expired.toString());
+	}
+
+	@Test
+	public void testDeadlineAtTickBoundary() {
+		TimerWheel<String> wheel = new TimerWheel<>(100, 16, 0);
+		wheel.schedule("a", 200);
+		advance(wheel, 199);
+		assertTrue(expired.isEmpty());
+		advance(wheel, 200);
+		assertEquals("[a]", expired.toString());
+	}
+
+	@Test
+	public void testPastDeadline() {
+		TimerWheel<String> wheel = new TimerWheel<>(100, 16, 1000);
+
+		// Expires at the next tick
+		wheel.schedule("a", 500);
+		advance(wheel, 1099);
+		assertTrue(expired.isEmpty());
+		advance(wheel, 1100);
+		assertEquals("[a]", expired.toString());
+	}
+
+	@Test
+	public void testMoreRevolutions() {
+		TimerWheel<String> wheel = new TimerWheel<>(100, 4, 0);
+		wheel.schedule("a", 1050);
+		wheel.schedule("b", 350);
+		for (long now = 0; now < 1100; now += 10) {
+			advance(wheel, now);
+			if (now < 400) {
+				assertTrue(expired.isEmpty(), "expired at " + now);
+			} else {
+				assertEquals("[b]", expired.toString(), "expired at " + now);
+			}
+		}
+		advance(wheel, 1100);
+		assertEquals("[b, a]", expired.toString());
+	}
+
+	@Test
+	public void testLongPause() {
+		TimerWheel<String> wheel = new TimerWheel<>(100, 4, 0);
+		wheel.schedule("a", 150);
+		wheel.schedule("b", 950);
+		wheel.schedule("c", 20000);
+
+		// Advance over several revolutions at once
+		advance(wheel, 5000);
+		assertEquals(2, expired.size());
+		assertTrue(expired.contains("a") && expired.contains("b"));
+		advance(wheel, 19999);
+		assertEquals(2, expired.size());
+		advance(wheel, 20000);
+		assertEquals(3, expired.size());
+	}
+
+	// --- UTILITIES ---
+
+	protected void advance(TimerWheel<String> wheel, long now) {
+		wheel.advance(now, (item, time) -> {
+			assertEquals(now, time.longValue());
+			expired.add(item);
+		});
+	}
+
+}
@@ -0,0 +1,183 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the interval, merge, serialization and comparison functions of the
+ * histogram snapshots.
+ */
+public class HistogramSnapshotTest {
+
+	// --- INTERVALS ---
+
+	@Test
+	public void testMinus() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		record(histogram, 1000, 2000, 100);
+		HistogramSnapshot first = histogram.snapshot();
+		record(histogram, 50000, 60000, 100);
+		HistogramSnapshot second = histogram.snapshot();
+
+		HistogramSnapshot interval = second.minus(first);
+		assertEquals(100, interval.getTotalCount());
+		assertEquals(second.getSum() - first.getSum(), interval.getSum());
+
+		// Min and max of the interval (rounded to bucket boundaries)
+		assertEquals(50000, interval.getMin(), 500);
+		assertEquals(60000, interval.getMax(), 600);
+		assertEquals(0, interval.getCountBetween(0, 10000));
+		assertEquals(100, interval.getCountBetween(40000, 70000));
+	}
+
+	@Test
+	public void testEmptyInterval() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		record(histogram, 1000, 2000, 10);
+		HistogramSnapshot snapshot = histogram.snapshot();
+		HistogramSnapshot interval = histogram.snapshot().minus(snapshot);
+		assertEquals(0, interval.getTotalCount());
+		assertEquals(0, interval.getMin());
+		assertEquals(0, interval.getMax());
+		assertEquals(0, interval.getValueAtPercentile(99));
+
+		// The first interval is the whole histogram
+		assertSame(snapshot, snapshot.minus(null));
+	}
+
+	// --- MERGE ---
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram a = new LatencyHistogram(1);
+		LatencyHistogram b = new LatencyHistogram(1);
+		record(a, 1000, 2000, 100);
+		record(b, 3000, 4000, 300);
+		HistogramSnapshot merged = a.snapshot().add(b.snapshot());
+		assertEquals(400, merged.getTotalCount());
+		assertEquals(a.snapshot().getSum() + b.snapshot().getSum(), merged.getSum());
+		assertEquals(1000, merged.getMin());
+		assertEquals(4000, merged.getMax());
+		assertEquals(100, merged.getCountBetween(0, 2500));
+
+		// Merging with an empty (or missing) histogram
+		HistogramSnapshot snapshot = a.snapshot();
+		assertSame(snapshot, snapshot.add(null));
+		HistogramSnapshot same = snapshot.add(new LatencyHistogram().snapshot());
+		assertEquals(snapshot.getMin(), same.getMin());
+		assertEquals(snapshot.getMax(), same.getMax());
+		assertEquals(snapshot.getValueAtPercentile(90), same.getValueAtPercentile(90));
+	}
+
+	// --- BINARY FORM ---
+
+	@Test
+	public void testSerialization() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		record(histogram, 100, 5000000, 1000);
+		HistogramSnapshot snapshot = histogram.snapshot();
+		byte[] bytes = snapshot.toBytes();
+		HistogramSnapshot copy = HistogramSnapshot.fromBytes(bytes);
+		assertArrayEquals(snapshot.counts, copy.counts);
+		assertEquals(snapshot.getTotalCount(), copy.getTotalCount());
+		assertEquals(snapshot.getSum(), copy.getSum());
+		assertEquals(snapshot.getMin(), copy.getMin());
+		assertEquals(snapshot.getMax(), copy.getMax());
+		assertArrayEquals(bytes, copy.toBytes());
+
+		// Empty histogram
+		HistogramSnapshot empty = HistogramSnapshot.fromBytes(new LatencyHistogram().snapshot().toBytes());
+		assertEquals(0, empty.getTotalCount());
+	}
+
+	@Test
+	public void testInvalidBinaryForm() {
+		byte[] bytes = new LatencyHistogram().snapshot().toBytes();
+		bytes[0] = 99;
+		assertThrows(IOException.class, () -> HistogramSnapshot.fromBytes(bytes));
+		assertThrows(IOException.class, () -> HistogramSnapshot.fromBytes(new byte[3]));
+	}
+
+	// --- COMPARISON ---
+
+	@Test
+	public void testRankSumOfSameValues() {
+		LatencyHistogram a = new LatencyHistogram(1);
+		LatencyHistogram b = new LatencyHistogram(1);
+		record(a, 1000, 100000, 1000);
+		record(b, 1000, 100000, 2000);
+		assertEquals(0, a.snapshot().rankSumZ(a.snapshot()), 0.000001);
+		assertTrue(Math.abs(a.snapshot().rankSumZ(b.snapshot())) < 1.96);
+	}
+
+	@Test
+	public void testRankSumOfSlowerValues() {
+		LatencyHistogram fast = new LatencyHistogram(1);
+		LatencyHistogram slow = new LatencyHistogram(1);
+		record(fast, 1000, 100000, 1000);
+		record(slow, 5000, 110000, 1000);
+
+		// Positive if the values of the first snapshot are larger
+		double z = slow.snapshot().rankSumZ(fast.snapshot());
+		assertTrue(z > 1.96, "z = " + z);
+		assertEquals(-z, fast.snapshot().rankSumZ(slow.snapshot()), 0.000001);
+	}
+
+	@Test
+	public void testRankSumOfEmptySnapshots() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		record(histogram, 1000, 2000, 100);
+		HistogramSnapshot empty = new LatencyHistogram().snapshot();
+		assertEquals(0, histogram.snapshot().rankSumZ(empty), 0);
+		assertEquals(0, empty.rankSumZ(histogram.snapshot()), 0);
+
+		// All values in the same bucket (all ties)
+		LatencyHistogram constant = new LatencyHistogram(1);
+		record(constant, 1000, 1000, 100);
+		assertEquals(0, constant.snapshot().rankSumZ(constant.snapshot()), 0);
+	}
+
+	// --- UTILITIES ---
+
+	/**
+	 * Records "count" values, evenly distributed between "from" and "to".
+	 */
+	protected static void record(LatencyHistogram histogram, long from, long to, int count) {
+		for (int i = 0; i < count; i++) {
+			histogram.record(from + (to - from) * i / Math.max(1, count - 1));
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bucket indexing and the percentiles of the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketBoundaries() {
+		for (int i = 0; i < LatencyHistogram.LENGTH; i++) {
+			long lowest = LatencyHistogram.lowestValueAt(i);
+			long highest = LatencyHistogram.highestValueAt(i);
+			assertTrue(lowest <= highest, "bucket " + i);
+			assertEquals(i, LatencyHistogram.indexOf(lowest));
+			assertEquals(i, LatencyHistogram.indexOf(highest));
+
+			// Buckets are contiguous
+			if (i > 0) {
+				assertEquals(LatencyHistogram.highestValueAt(i - 1) + 1, lowest);
+			}
+		}
+		assertEquals(LatencyHistogram.LENGTH - 1, LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE));
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		for (int value = 0; value < 256; value++) {
+			assertEquals(value, LatencyHistogram.indexOf(value));
+			assertEquals(value, LatencyHistogram.highestValueAt(value));
+		}
+	}
+
+	@Test
+	public void testRelativeError() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			long value = Math.min(LatencyHistogram.MAX_VALUE,
+					256 + ((random.nextLong() & LatencyHistogram.MAX_VALUE) >>> random.nextInt(34)));
+			int index = LatencyHistogram.indexOf(value);
+			long lowest = LatencyHistogram.lowestValueAt(index);
+			long highest = LatencyHistogram.highestValueAt(index);
+			assertTrue(lowest <= value && value <= highest, "value " + value);
+			assertTrue((highest - lowest) / (double) lowest < 0.01, "value " + value);
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram(4);
+		long sum = 0;
+		for (long micros = 1; micros <= 10000; micros++) {
+			histogram.record(micros * 1000);
+			sum += micros * 1000;
+		}
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(10000, snapshot.getTotalCount());
+		assertEquals(sum, snapshot.getSum());
+		assertEquals(sum / 10000, snapshot.getMean());
+		assertEquals(1000, snapshot.getMin());
+		assertEquals(10000000, snapshot.getMax());
+		assertEquals(5000000, snapshot.getValueAtPercentile(50), 50000);
+		assertEquals(9000000, snapshot.getValueAtPercentile(90), 90000);
+		assertEquals(9900000, snapshot.getValueAtPercentile(99), 99000);
+		assertEquals(10000000, snapshot.getValueAtPercentile(100));
+
+		// The reported values are the highest equivalents (never lower)
+		assertTrue(snapshot.getValueAtPercentile(50) >= 5000000);
+		assertEquals(LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(1000)), snapshot.getValueAtPercentile(0));
+	}
+
+	@Test
+	public void testClampedValues() {
+		LatencyHistogram histogram = new LatencyHistogram(1);
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(2, snapshot.getTotalCount());
+		assertEquals(0, snapshot.getMin());
+		assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+		assertEquals(0, snapshot.getTotalCount());
+		assertEquals(0, snapshot.getMin());
+		assertEquals(0, snapshot.getMax());
+		assertEquals(0, snapshot.getMean());
+		assertEquals(0, snapshot.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(4);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					histogram.record(j);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(80000, snapshot.getTotalCount());
+		assertEquals(0, snapshot.getMin());
+		assertEquals(9999, snapshot.getMax());
+	}
+
+}
@@ -0,0 +1,150 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2017 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.repl.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import services.moleculer.ServiceBroker;
+import services.moleculer.config.ServiceBrokerConfig;
+import services.moleculer.repl.commands.Bench.BenchData;
+import services.moleculer.service.Action;
+import services.moleculer.service.Name;
+import services.moleculer.service.Service;
+import services.moleculer.transporter.TcpTransporter;
+
+/**
+ * Checks the per-node statistics of the bench command with two brokers (the
+ * benchmarked actions run only on the second node).
+ */
+public class BenchNodeTest {
+
+	protected ServiceBroker local;
+	protected ServiceBroker remote;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		int localPort = freePort();
+		int remotePort = freePort();
+		local = createBroker("local", localPort, "tcp://127.0.0.1:" + remotePort + "/remote");
+		remote = createBroker("remote", remotePort, "tcp://127.0.0.1:" + localPort + "/local");
+		remote.createService(new RemoteService());
+		remote.start();
+		local.start();
+		local.waitForServices(15000, "remoteService").waitFor(20000);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		if (local != null) {
+			local.stop();
+		}
+		if (remote != null) {
+			remote.stop();
+		}
+	}
+
+	@Test
+	public void testBalancedResponses() throws Exception {
+		BenchData data = runBench("remoteService.echo", "--num", "200");
+		assertEquals(200, data.resCount.get());
+		assertEquals(0, data.errorCount.get());
+
+		// The responses of the remote node are not counted as local ones
+		assertNull(data.nodes.get("local"));
+		assertEquals(200, data.nodes.get(Bench.UNKNOWN_NODE).resCount.get());
+	}
+
+	@Test
+	public void testDirectResponses() throws Exception {
+		BenchData data = runBench("remoteService.echo", "--num", "200", "--nodeID", "remote");
+		assertEquals(200, data.resCount.get());
+		assertEquals(1, data.nodes.size());
+		assertEquals(200, data.nodes.get("remote").resCount.get());
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		BenchData data = runBench("remoteService.fail", "--num", "50");
+		assertEquals(50, data.errorCount.get());
+
+		// Errors contain the nodeID of the failing node
+		assertFalse(data.nodes.containsKey(Bench.UNKNOWN_NODE));
+		assertEquals(50, data.nodes.get("remote").errorCount.get());
+	}
+
+	// --- UTILITIES ---
+
+	protected BenchData runBench(String... parameters) throws Exception {
+		Bench bench = new Bench();
+		PrintWriter out = new PrintWriter(Writer.nullWriter());
+		BenchData data = bench.createBench(local, out, parameters, bench.parseBenchFlags(parameters), null);
+		data.quiet = true;
+		bench.runBench(local, data);
+		return data;
+	}
+
+	protected static ServiceBroker createBroker(String nodeID, int port, String url) {
+		ServiceBrokerConfig cfg = new ServiceBrokerConfig();
+		cfg.setNodeID(nodeID);
+		TcpTransporter transporter = new TcpTransporter(url);
+		transporter.setPort(port);
+		transporter.setUseHostname(false);
+		cfg.setTransporter(transporter);
+		return new ServiceBroker(cfg);
+	}
+
+	protected static int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	@Name("remoteService")
+	public static class RemoteService extends Service {
+
+		@Name("echo")
+		public Action echo = ctx -> {
+			return ctx.params;
+		};
+
+		@Name("fail")
+		public Action fail = ctx -> {
+			throw new IllegalStateException("Failed!");
+		};
+
+	}
+
+}